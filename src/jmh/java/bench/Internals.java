@@ -0,0 +1,131 @@
+package bench;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Reflective access to MergeSubset and its private nested classes, kept in one place so the benchmarks
+ * exercise the real copy loop without widening its visibility (JMH will not generate benchmarks in the
+ * default package, so even the package-private classes are out of direct reach). When a signature below
+ * changes in MergeSubset, this is the only benchmark file to touch.
+ */
+final class Internals {
+    private Internals() { }
+
+    static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("No class " + name + " on the classpath", e);
+        }
+    }
+
+    private static Class<?> nested(String name) {
+        return load("MergeSubset$" + name);
+    }
+
+    private static Object construct(String name, Class<?>[] types, Object... args) {
+        try {
+            Constructor<?> c = nested(name).getDeclaredConstructor(types);
+            c.setAccessible(true);
+            return c.newInstance(args);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot construct MergeSubset." + name, e);
+        }
+    }
+
+    /** MergeSubset.main; the class reads its .env when this first touches it. */
+    static void runMerge() throws Exception {
+        try {
+            load("MergeSubset").getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+            throw e;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, String> implicitRefs() {
+        try {
+            Field f = load("MergeSubset").getDeclaredField("IMPLICIT_REFS");
+            f.setAccessible(true);
+            return (Map<String, String>) f.get(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** A TablePlan built from the dump, as SchemaCatalog would build it from information_schema. */
+    static Object tablePlan(LimsSchema.Table t) {
+        return construct("TablePlan",
+                new Class<?>[] { String.class, List.class, List.class, String.class, Map.class, Set.class },
+                t.name, t.columnNames(), t.dataTypes(), t.idColumn(), t.foreignKeys, t.unique);
+    }
+
+    /**
+     * A MergeContext for a first, non-incremental run: every table of {@code schema} offset by
+     * {@code offset} on the LABBENCH side, unique indexes empty, checkpoints and blob dedup off.
+     */
+    static Object context(LimsSchema schema, long offset) {
+        Class<?>[] remapArgs = { String.class, String.class, List.class, long.class, long.class, String.class,
+                                 java.sql.Timestamp.class };
+        Map<String, Object> lims = new LinkedHashMap<>();
+        Map<String, Object> labbench = new LinkedHashMap<>();
+        for (LimsSchema.Table t : schema.tables()) {
+            if (t.idColumn() == null) continue;
+            lims.put(t.name, construct("IdRemap", remapArgs, "lims", t.name, Collections.emptyList(), offset, 0L, null, null));
+            labbench.put(t.name, construct("IdRemap", remapArgs, "labbench", t.name, Collections.emptyList(), offset, offset, null, null));
+        }
+        Object plan = construct("OffsetPlan", new Class<?>[] { Map.class, Map.class }, lims, labbench);
+
+        Object unique = construct("UniqueIndex", new Class<?>[0]);
+        try {
+            Field f = nested("UniqueIndex").getDeclaredField("taken");
+            f.setAccessible(true);
+            @SuppressWarnings("unchecked")
+            Map<String, Set<String>> taken = (Map<String, Set<String>>) f.get(unique);
+            for (LimsSchema.Table t : schema.tables()) {
+                for (String col : t.unique) taken.put(t.name + "." + col, new HashSet<>());
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+
+        Object checkpoints = construct("Checkpoints", new Class<?>[] { boolean.class, boolean.class }, false, false);
+        Object metrics = construct("Metrics", new Class<?>[0]);
+        return construct("MergeContext",
+                new Class<?>[] { nested("SchemaCatalog"), nested("OffsetPlan"), nested("UniqueIndex"),
+                                 nested("Checkpoints"), nested("Metrics"), nested("BlobCache") },
+                null, plan, unique, checkpoints, metrics, null);
+    }
+
+    private static final Method INSERT_RESULT_SET;
+    static {
+        try {
+            INSERT_RESULT_SET = load("MergeSubset").getDeclaredMethod("insertResultSet", Connection.class,
+                    nested("TablePlan"), ResultSet.class, boolean.class, nested("MergeContext"));
+            INSERT_RESULT_SET.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /** MergeSubset.insertResultSet: remaps every row of {@code rs} and writes it to {@code dst}. */
+    static void insertResultSet(Connection dst, Object tablePlan, ResultSet rs, boolean reindex, Object context)
+            throws SQLException {
+        try {
+            INSERT_RESULT_SET.invoke(null, dst, tablePlan, rs, reindex, context);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof SQLException) throw (SQLException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Table shapes parsed from scripts/lims_schema.sql (a mysqldump --no-data): columns and types,
+ * primary key, declared foreign keys and unique keys. Also loads the DDL into a test server.
+ * -Dlims.schema points at another dump.
+ */
+final class LimsSchema {
+    private static final Pattern TABLE  = Pattern.compile("^CREATE TABLE `(\\w+)` \\(");
+    private static final Pattern COLUMN = Pattern.compile("^  `(\\w+)` (\\w+)(?:\\((\\d+)\\))?");
+    private static final Pattern PK     = Pattern.compile("^  PRIMARY KEY \\((.+)\\)");
+    private static final Pattern UNIQUE = Pattern.compile("^  UNIQUE KEY `\\w+` \\(`(\\w+)`\\)");
+    private static final Pattern FK     = Pattern.compile("FOREIGN KEY \\(`(\\w+)`\\) REFERENCES `(\\w+)`");
+
+    static final class Column {
+        final String name;
+        final String type;   // information_schema DATA_TYPE
+        final int length;    // varchar/char length, 0 otherwise
+
+        Column(String name, String type, int length) {
+            this.name = name;
+            this.type = type;
+            this.length = length;
+        }
+    }
+
+    static final class Table {
+        final String name;
+        final List<Column> columns = new ArrayList<>();
+        final List<String> primaryKey = new ArrayList<>();
+        final Map<String, String> foreignKeys = new LinkedHashMap<>();
+        final Set<String> unique = new LinkedHashSet<>();
+
+        Table(String name) {
+            this.name = name;
+        }
+
+        /** The id column MergeSubset remaps: {@code id} when it is (part of) the PK. */
+        String idColumn() {
+            return primaryKey.contains("id") ? "id" : null;
+        }
+
+        List<String> columnNames() {
+            List<String> out = new ArrayList<>();
+            for (Column c : columns) out.add(c.name);
+            return out;
+        }
+
+        List<String> dataTypes() {
+            List<String> out = new ArrayList<>();
+            for (Column c : columns) out.add(c.type);
+            return out;
+        }
+    }
+
+    private final Map<String, Table> tables = new LinkedHashMap<>();
+    private final List<String> statements = new ArrayList<>();
+
+    static LimsSchema load() throws IOException {
+        String file = System.getProperty("lims.schema", "scripts/lims_schema.sql");
+        LimsSchema schema = new LimsSchema();
+        StringBuilder stmt = new StringBuilder();
+        Table current = null;
+        for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+            Matcher m;
+            if ((m = TABLE.matcher(line)).find()) {
+                current = new Table(m.group(1));
+                schema.tables.put(current.name, current);
+            } else if (current != null && (m = COLUMN.matcher(line)).find()) {
+                current.columns.add(new Column(m.group(1), m.group(2).toLowerCase(Locale.ROOT),
+                        m.group(3) == null ? 0 : Integer.parseInt(m.group(3))));
+            } else if (current != null && (m = PK.matcher(line)).find()) {
+                for (String col : m.group(1).split(",")) current.primaryKey.add(col.replace("`", "").trim());
+            } else if (current != null && (m = UNIQUE.matcher(line)).find()) {
+                current.unique.add(m.group(1));
+            } else if (current != null && (m = FK.matcher(line)).find()) {
+                current.foreignKeys.put(m.group(1), m.group(2));
+            }
+            if (line.startsWith(")")) current = null;
+
+            if (line.startsWith("--") || line.isEmpty()) continue;
+            stmt.append(line).append('\n');
+            if (line.endsWith(";")) {
+                schema.statements.add(stmt.toString());
+                stmt.setLength(0);
+            }
+        }
+        return schema;
+    }
+
+    Table table(String name) {
+        Table t = tables.get(name);
+        if (t == null) throw new IllegalArgumentException("No table " + name + " in schema dump");
+        return t;
+    }
+
+    Collection<Table> tables() {
+        return tables.values();
+    }
+
+    /** (Re)creates {@code database} with every table of the dump. */
+    void create(Connection c, String database) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            st.execute("DROP DATABASE IF EXISTS `" + database + "`");
+            st.execute("CREATE DATABASE `" + database + "` DEFAULT CHARACTER SET utf8mb4");
+            st.execute("USE `" + database + "`");
+            for (String sql : statements) {
+                // MariaDB has no MySQL 8 collations
+                st.execute(sql.replace("utf8mb4_0900_ai_ci", "utf8mb4_unicode_ci"));
+            }
+        }
+    }
+}
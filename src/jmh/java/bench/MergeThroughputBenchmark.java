@@ -0,0 +1,124 @@
+package bench;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * End-to-end MergeSubset.main against an embedded MariaDB (MariaDB4j) holding lims, labbench and
+ * limsdev created from scripts/lims_schema.sql. Both sources get the same synthetic plates, so every
+ * LABBENCH unique value collides and is renamed. limsdev is recreated (untimed) before each merge;
+ * MAX_PLATES=0 merges every plate. Reported as merges and rows per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class MergeThroughputBenchmark {
+    @Param("50")
+    public int plates;
+
+    @Param("16384")
+    public int blobBytes;
+
+    @Param({ "false", "true" })
+    public boolean bulkLoad;
+
+    @Param({ "1", "4" })
+    public int mergeThreads;
+
+    @Param({ "0", "4" })
+    public int pipelineDepth;
+
+    private DB db;
+    private String url;
+    private LimsSchema schema;
+    private long rowsPerMerge;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Rows {
+        public long rows;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        DBConfigurationBuilder config = DBConfigurationBuilder.newBuilder();
+        config.setPort(0); // any free port
+        config.addArg("--local-infile=1");
+        if ("root".equals(System.getProperty("user.name"))) config.addArg("--user=root");
+        db = DB.newEmbeddedDB(config.build());
+        db.start();
+        int port = db.getConfiguration().getPort();
+        url = "jdbc:mysql://localhost:" + port + "/?user=root&useSSL=false&allowPublicKeyRetrieval=true"
+                + "&rewriteBatchedStatements=true";
+
+        // MergeSubset reads its .env once, when the class initializes; nothing below may touch it first
+        Path envDir = Files.createTempDirectory("bench-env");
+        String env = String.join("\n",
+                "SRC_HOST=localhost", "SRC_PORT=" + port, "SRC_USER=root", "SRC_PASS=",
+                "DST_HOST=localhost", "DST_PORT=" + port, "DST_USER=root", "DST_PASS=", "DST_USE_SSL=false",
+                "MAX_PLATES=0",
+                "MERGE_THREADS=" + mergeThreads,
+                "BULK_LOAD=" + bulkLoad,
+                "PIPELINE_DEPTH=" + pipelineDepth,
+                // Reports go to the temp directory so benchmark runs leave the working tree clean
+                "METRICS_REPORT=",
+                "RENAME_REPORT=" + envDir.resolve("rename_report.csv"),
+                "ORPHAN_REPORT=" + envDir.resolve("orphan_report.csv"),
+                "VERIFY_REPORT=" + envDir.resolve("verify_report.csv"), "");
+        Files.write(envDir.resolve(".env"), env.getBytes(StandardCharsets.UTF_8));
+        System.setProperty("merge.env.dir", envDir.toString());
+
+        schema = LimsSchema.load();
+        SyntheticData data = new SyntheticData(schema, plates, 1024, blobBytes);
+        try (Connection c = DriverManager.getConnection(url)) {
+            for (String source : new String[] { "lims", "labbench" }) {
+                schema.create(c, source);
+                data.populate(c, source);
+            }
+        }
+
+        // One reference merge sizes the rows counter and fails fast if the merge itself is broken
+        resetDest();
+        Internals.runMerge();
+        try (Connection c = DriverManager.getConnection(url); Statement st = c.createStatement()) {
+            for (LimsSchema.Table t : schema.tables()) {
+                try (ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM limsdev." + t.name)) {
+                    rs.next();
+                    rowsPerMerge += rs.getLong(1);
+                }
+            }
+        }
+        System.out.println("Rows per merge: " + rowsPerMerge);
+    }
+
+    @Setup(Level.Invocation)
+    public void resetDest() throws SQLException {
+        try (Connection c = DriverManager.getConnection(url)) {
+            schema.create(c, "limsdev");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (db != null) db.stop();
+    }
+
+    @Benchmark
+    public void merge(Rows counter) throws Exception {
+        Internals.runMerge();
+        counter.rows += rowsPerMerge;
+    }
+}
@@ -0,0 +1,69 @@
+package bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+
+/**
+ * A Connection whose prepared statements accept and discard everything, so a benchmark measures
+ * the remap loop rather than a server. Streamed LOB parameters are drained, as the driver would,
+ * and executeBatch reports one update per added row.
+ */
+final class NullSink {
+    private NullSink() { }
+
+    static Connection connection() {
+        return (Connection) Proxy.newProxyInstance(NullSink.class.getClassLoader(), new Class<?>[] { Connection.class },
+                (proxy, method, args) -> {
+                    if (method.getName().equals("prepareStatement")) return statement();
+                    return defaultValue(method.getReturnType());
+                });
+    }
+
+    private static PreparedStatement statement() {
+        int[] pending = new int[1];
+        byte[] buf = new byte[8192];
+        char[] cbuf = new char[4096];
+        return (PreparedStatement) Proxy.newProxyInstance(NullSink.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "setBinaryStream":
+                            try (InputStream in = (InputStream) args[1]) {
+                                while (in.read(buf) >= 0) { }
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                            return null;
+                        case "setCharacterStream":
+                            try (Reader r = (Reader) args[1]) {
+                                while (r.read(cbuf) >= 0) { }
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                            return null;
+                        case "addBatch":
+                            pending[0]++;
+                            return null;
+                        case "executeBatch":
+                            int[] counts = new int[pending[0]];
+                            java.util.Arrays.fill(counts, 1);
+                            pending[0] = 0;
+                            return counts;
+                        default:
+                            return defaultValue(method.getReturnType());
+                    }
+                });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) return false;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        return null;
+    }
+}
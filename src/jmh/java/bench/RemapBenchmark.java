@@ -0,0 +1,75 @@
+package bench;
+
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.util.concurrent.TimeUnit;
+import javax.sql.rowset.CachedRowSet;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The per-row hot path of a table copy, MergeSubset.insertResultSet: PK and FK remaps, LOB streaming
+ * and JDBC parameter binding, with synthetic rows shaped like pcr (FK-heavy, several text columns),
+ * traces (one longblob per row) and assembly (wide, many longtext columns) read from memory and
+ * written to a sink that discards them. Reported as rows copied per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RemapBenchmark {
+    @Param({ "pcr", "traces", "assembly" })
+    public String table;
+
+    /** LABBENCH copy (ids offset) vs LIMS copy (ids kept). */
+    @Param({ "true", "false" })
+    public boolean reindex;
+
+    @Param("20")
+    public int plates;
+
+    @Param("1024")
+    public int textChars;
+
+    @Param("16384")
+    public int blobBytes;
+
+    private CachedRowSet rows;
+    private Object plan;
+    private Object context;
+    private Connection sink;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Rows {
+        public long rows;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // Keep a developer's .env (BULK_LOAD, batch sizes) out of the measurement
+        System.setProperty("merge.env.dir", Files.createTempDirectory("bench-env").toString());
+
+        LimsSchema schema = LimsSchema.load();
+        SyntheticData data = new SyntheticData(schema, plates, textChars, blobBytes);
+        LimsSchema.Table t = schema.table(table);
+        rows = data.rowSet(table);
+        plan = Internals.tablePlan(t);
+        context = Internals.context(schema, 1_000_000L);
+        sink = NullSink.connection();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        rows.close();
+    }
+
+    @Benchmark
+    public int copy(Rows counter) throws Exception {
+        rows.beforeFirst();
+        Internals.insertResultSet(sink, plan, rows, reindex, context);
+        counter.rows += rows.size();
+        return rows.size();
+    }
+}
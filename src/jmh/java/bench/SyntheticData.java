@@ -0,0 +1,178 @@
+package bench;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.*;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+
+/**
+ * Deterministic rows for any {@link LimsSchema} table, sized by a plate count the way LIMS data is:
+ * 96 wells per plate for the plate-scoped tables, a handful of shared thermocycles and cocktails.
+ * Reference columns (declared FKs and MergeSubset's implicit ones) point at existing parent rows,
+ * spread proportionally, so every plate's rows hang off that plate.
+ */
+final class SyntheticData {
+    private static final long EPOCH = Timestamp.valueOf("2020-01-01 00:00:00").getTime();
+
+    private final LimsSchema schema;
+    private final Map<String, String> implicitRefs;
+    private final Map<String, Long> counts = new LinkedHashMap<>();
+    private final int textChars;
+    private final byte[] blob;
+
+    SyntheticData(LimsSchema schema, int plates, int textChars, int blobBytes) {
+        this.schema = schema;
+        this.implicitRefs = Internals.implicitRefs();
+        this.textChars = textChars;
+        this.blob = new byte[blobBytes];
+        new Random(42).nextBytes(blob);
+
+        long wells = 96L * plates;
+        counts.put("thermocycle", 10L);
+        counts.put("cycle", 30L);
+        counts.put("state", 90L);
+        counts.put("pcr_thermocycle", 5L);
+        counts.put("cyclesequencing_thermocycle", 5L);
+        counts.put("failure_reason", 5L);
+        counts.put("pcr_cocktail", 10L);
+        counts.put("cyclesequencing_cocktail", 10L);
+        counts.put("plate", (long) plates);
+        counts.put("gelimages", (long) plates);
+        for (String t : Arrays.asList("extraction", "workflow", "assembly", "pcr", "cyclesequencing",
+                                      "traces", "gel_quantification", "sequencing_result")) {
+            counts.put(t, wells);
+        }
+    }
+
+    long count(String table) {
+        return counts.getOrDefault(table, 0L);
+    }
+
+    /** Value of {@code c} in row {@code row} (1-based) of {@code t}. */
+    Object value(LimsSchema.Table t, LimsSchema.Column c, long row) {
+        String ref = t.foreignKeys.get(c.name);
+        if (ref == null) ref = implicitRefs.get(t.name + "." + c.name);
+        switch (c.type) {
+            case "tinyint":
+            case "smallint":
+            case "int":
+            case "bigint":
+                if (ref != null) return (row - 1) * count(ref) / count(t.name) + 1;
+                return c.name.equals("id") ? row : row % 97;
+            case "float":
+            case "double":
+            case "decimal":
+                return (row % 1000) / 10.0;
+            case "char":
+            case "varchar":
+                String s = (t.unique.contains(c.name) ? c.name + "-" : c.name.substring(0, 1)) + row;
+                return c.length > 0 && s.length() > c.length ? s.substring(0, c.length) : s;
+            case "text":
+            case "mediumtext":
+            case "longtext":
+                return text(row);
+            case "blob":
+            case "mediumblob":
+            case "longblob":
+                return blob;
+            case "date":
+                return new Date(EPOCH + row * 86_400_000L);
+            case "datetime":
+            case "timestamp":
+                return new Timestamp(EPOCH + row * 1000L);
+            default:
+                return null;
+        }
+    }
+
+    private String text(long row) {
+        StringBuilder sb = new StringBuilder(textChars);
+        long x = row * 0x9E3779B97F4A7C15L;
+        while (sb.length() < textChars) {
+            sb.append("ACGT".charAt((int) (x >>> 62)));
+            x = x * 6364136223846793005L + 1442695040888963407L;
+        }
+        return sb.toString();
+    }
+
+    /** All rows of {@code table} as an in-memory result set, columns in schema order. */
+    CachedRowSet rowSet(String table) throws SQLException {
+        LimsSchema.Table t = schema.table(table);
+        CachedRowSet crs = RowSetProvider.newFactory().createCachedRowSet();
+        RowSetMetaDataImpl md = new RowSetMetaDataImpl();
+        md.setColumnCount(t.columns.size());
+        for (int i = 0; i < t.columns.size(); i++) {
+            md.setColumnName(i + 1, t.columns.get(i).name);
+            md.setColumnLabel(i + 1, t.columns.get(i).name);
+            md.setColumnType(i + 1, sqlType(t.columns.get(i).type));
+            md.setNullable(i + 1, RowSetMetaDataImpl.columnNullable);
+        }
+        crs.setMetaData(md);
+        for (long row = 1; row <= count(table); row++) {
+            crs.moveToInsertRow();
+            for (int i = 0; i < t.columns.size(); i++) crs.updateObject(i + 1, value(t, t.columns.get(i), row));
+            crs.insertRow();
+            crs.moveToCurrentRow();
+        }
+        crs.beforeFirst();
+        return crs;
+    }
+
+    /** Inserts every counted table into {@code database} (FK checks off, so order does not matter). */
+    void populate(Connection c, String database) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            st.execute("USE `" + database + "`");
+            st.execute("SET FOREIGN_KEY_CHECKS = 0");
+        }
+        for (LimsSchema.Table t : schema.tables()) {
+            long n = count(t.name);
+            if (n == 0) continue;
+            StringJoiner cols = new StringJoiner(", ");
+            StringJoiner ph = new StringJoiner(", ");
+            for (LimsSchema.Column col : t.columns) {
+                cols.add("`" + col.name + "`");
+                ph.add("?");
+            }
+            try (PreparedStatement ps = c.prepareStatement("INSERT INTO " + t.name + " (" + cols + ") VALUES (" + ph + ")")) {
+                for (long row = 1; row <= n; row++) {
+                    for (int i = 0; i < t.columns.size(); i++) ps.setObject(i + 1, value(t, t.columns.get(i), row));
+                    ps.addBatch();
+                    if (row % 500 == 0) ps.executeBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+        try (Statement st = c.createStatement()) {
+            st.execute("SET FOREIGN_KEY_CHECKS = 1");
+        }
+    }
+
+    private static int sqlType(String dataType) {
+        switch (dataType) {
+            case "tinyint":    return Types.TINYINT;
+            case "smallint":   return Types.SMALLINT;
+            case "int":        return Types.INTEGER;
+            case "bigint":     return Types.BIGINT;
+            case "float":      return Types.REAL;
+            case "double":     return Types.DOUBLE;
+            case "decimal":    return Types.DECIMAL;
+            case "date":       return Types.DATE;
+            case "datetime":
+            case "timestamp":  return Types.TIMESTAMP;
+            case "text":
+            case "mediumtext":
+            case "longtext":   return Types.LONGVARCHAR;
+            case "blob":
+            case "mediumblob":
+            case "longblob":   return Types.LONGVARBINARY;
+            default:           return Types.VARCHAR;
+        }
+    }
+}
@@ -1,6 +1,27 @@
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.*;
+import java.text.Normalizer;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import com.mysql.cj.jdbc.JdbcStatement;
 import io.github.cdimascio.dotenv.Dotenv;
 
 /**
@@ -10,7 +31,7 @@ import io.github.cdimascio.dotenv.Dotenv;
  *
  * What it copies:
  *  1) Global tables (not plate-scoped): thermocycle, cycle, state, pcr_thermocycle, cyclesequencing_thermocycle
- *  2) For up to 10 selected plates per source schema (or names filter):
+ *  2) For up to MAX_PLATES (default 10, 0 = all) selected plates per source schema (or names filter):
  *     - plate
  *     - extraction (by plate)
  *     - workflow (by extraction)
@@ -24,14 +45,18 @@ import io.github.cdimascio.dotenv.Dotenv;
  *
  * Assumptions:
  *  - DEST (merge) schema has identical structures to source.
- *  - LIMS rows keep their IDs; LABBENCH rows get offset = current MAX(id) in DEST.
- *  - FKs are updated via in-memory id maps.
+ *  - LIMS rows keep their IDs, except rows new to a later incremental run; LABBENCH rows get a per-table
+ *    offset that is planned once, before any insert, as max(MAX(id) in DEST, MAX(id) in LIMS) (see {@link OffsetPlan}).
+ *  - PKs, FKs and unique columns come from the LIMS source's information_schema (see {@link SchemaCatalog}),
+ *    plus the undeclared references in IMPLICIT_REFS.
+ *  - PKs and FKs are remapped through the frozen offset plan.
  */
 public class MergeSubset {
 
     // ==== CONFIG ====
-    // .env lives in project root (beside pom.xml)
-    private static final Dotenv dotenv = Dotenv.configure().ignoreIfMissing().load();
+    // .env lives in project root (beside pom.xml); -Dmerge.env.dir points elsewhere (the benchmarks do)
+    private static final Dotenv dotenv = Dotenv.configure()
+            .directory(System.getProperty("merge.env.dir", "./")).ignoreIfMissing().load();
 
     // Sources (same host+port for both lims and labbench)
     private static final String SRC_HOST = dotenv.get("SRC_HOST", "127.0.0.1");
@@ -46,76 +71,114 @@ public class MergeSubset {
     private static final String  DST_PASS    = dotenv.get("DST_PASS", "");
     private static final boolean DST_USE_SSL = Boolean.parseBoolean(dotenv.get("DST_USE_SSL", "true"));
 
+    // Row streaming: source rows arrive through a server-side cursor STREAM_FETCH_SIZE rows at a time
+    // (0 = let the driver buffer the whole result). Tables with blob/longtext columns flush smaller batches.
+    private static final int STREAM_FETCH_SIZE = Integer.parseInt(dotenv.get("STREAM_FETCH_SIZE", "200"));
+    private static final int BATCH_SIZE        = Integer.parseInt(dotenv.get("BATCH_SIZE", "1000"));
+    private static final int BLOB_BATCH_SIZE   = Integer.parseInt(dotenv.get("BLOB_BATCH_SIZE", "50"));
+
+    // Pipelined copies: source rows are read and remapped into batches while a writer thread executes
+    // earlier ones on DEST, with up to PIPELINE_DEPTH batches in between. 0 reads and writes in turn on
+    // one thread. Tables with LOBs keep that loop, which streams them straight from the source, unless
+    // PIPELINE_LOBS holds their batches in memory too, at most PIPELINE_BUFFER_MB of LOBs per table.
+    private static final int PIPELINE_DEPTH = Integer.parseInt(dotenv.get("PIPELINE_DEPTH", "4"));
+    private static final int PIPELINE_BUFFER_MB = Integer.parseInt(dotenv.get("PIPELINE_BUFFER_MB", "64"));
+    private static final boolean PIPELINE_LOBS = Boolean.parseBoolean(dotenv.get("PIPELINE_LOBS", "false"));
+
+    // Incremental mode: copy only rows that are new (id above the last run's watermark) or changed
+    // (date/lastModified since the last run) across every plate; progress lives in DEST's merge_watermark
+    private static final boolean INCREMENTAL = Boolean.parseBoolean(dotenv.get("MERGE_INCREMENTAL", "false"));
+
+    // When DEST commits: "run" (one transaction for the whole merge), "table" (after each table) or
+    // "batches" (every COMMIT_EVERY_BATCHES insert batches). Anything but "run" keeps a checkpoint
+    // journal in DEST so a failed merge resumes where it stopped.
+    private static final String COMMIT_MODE          = dotenv.get("COMMIT_MODE", "run");
+    private static final int    COMMIT_EVERY_BATCHES = Integer.parseInt(dotenv.get("COMMIT_EVERY_BATCHES", "10"));
+
+    // Bulk mode: copy rows with LOAD DATA LOCAL INFILE (needs local_infile=ON on DEST), BULK_LOAD_ROWS per statement.
+    // Falls back to batched INSERTs for upserts (incremental runs) and when the server does not allow it.
+    private static final boolean BULK_LOAD      = Boolean.parseBoolean(dotenv.get("BULK_LOAD", "false"));
+    private static final int     BULK_LOAD_ROWS = Integer.parseInt(dotenv.get("BULK_LOAD_ROWS", "50000"));
+
+    // Blob dedup: binary LOBs are hashed (SHA-256) while copying, and a blob DEST already holds is copied
+    // server-side from that row instead of being sent again. Known blobs stay in an LRU of BLOB_CACHE_ENTRIES
+    // (evicted ones spill to BLOB_CACHE_DIR when set) and in DEST's merge_blob_index for later runs.
+    private static final boolean BLOB_DEDUP         = Boolean.parseBoolean(dotenv.get("BLOB_DEDUP", "false"));
+    private static final int     BLOB_CACHE_ENTRIES = Integer.parseInt(dotenv.get("BLOB_CACHE_ENTRIES", "100000"));
+    private static final String  BLOB_CACHE_DIR     = dotenv.get("BLOB_CACHE_DIR", "");
+
+    // Table copies running concurrently; 1 keeps the whole merge in a single DEST transaction
+    private static final int MERGE_THREADS = Integer.parseInt(dotenv.get("MERGE_THREADS", "1"));
+
+    // Plate shards: above 0, each schema's selected plates are split into MERGE_SHARDS slices by id, and one job
+    // per slice copies that slice's plate-scoped rows (plate -> extraction -> workflow -> assembly, pcr,
+    // cyclesequencing -> traces, gels) table by table, on the MERGE_THREADS workers. Shards insert with FK checks
+    // off (rows may reference another shard's); references are verified once every shard is in. Ids come from
+    // the offset plan and unique renames are settled before the first shard, so the shard count never changes
+    // the result.
+    private static final int MERGE_SHARDS = Integer.parseInt(dotenv.get("MERGE_SHARDS", "0"));
+
+    // Concurrent source queries while discovering the plate worksets of both schemas
+    private static final int WORKSET_THREADS = Integer.parseInt(dotenv.get("WORKSET_THREADS", "4"));
+
+    // Connector/J tuning shared by the source and DEST pools; *_JDBC_PROPS adds raw "key=value&key=value" pairs.
+    // Pools hold max(MERGE_THREADS, WORKSET_THREADS) + 1 connections per source schema and MERGE_THREADS + 1 for
+    // DEST (the extra one is main's), or VERIFY_THREADS + 1 when that is more and MERGE_VERIFY is on.
+    private static final boolean JDBC_REWRITE_BATCHED  = Boolean.parseBoolean(dotenv.get("JDBC_REWRITE_BATCHED_STATEMENTS", "true"));
+    private static final boolean JDBC_SERVER_PREP      = Boolean.parseBoolean(dotenv.get("JDBC_USE_SERVER_PREP_STMTS", "true"));
+    private static final boolean JDBC_CACHE_PREP       = Boolean.parseBoolean(dotenv.get("JDBC_CACHE_PREP_STMTS", "true"));
+    private static final int     JDBC_PREP_CACHE_SIZE  = Integer.parseInt(dotenv.get("JDBC_PREP_STMT_CACHE_SIZE", "250"));
+    private static final int     JDBC_PREP_CACHE_LIMIT = Integer.parseInt(dotenv.get("JDBC_PREP_STMT_CACHE_SQL_LIMIT", "2048"));
+    private static final String  SRC_JDBC_PROPS        = dotenv.get("SRC_JDBC_PROPS", "");
+    private static final String  DST_JDBC_PROPS        = dotenv.get("DST_JDBC_PROPS", "");
+
+    // Per-phase and per-table timings and counters, written at the end (.csv for CSV, JSON otherwise;
+    // empty to skip). PROGRESS_INTERVAL_SEC > 0 prints throughput and an ETA while tables are copied.
+    private static final String METRICS_REPORT        = dotenv.get("METRICS_REPORT", "merge_metrics.json");
+    private static final int    PROGRESS_INTERVAL_SEC = Integer.parseInt(dotenv.get("PROGRESS_INTERVAL_SEC", "0"));
+
+    // Verification (MERGE_VERIFY): after the commit, every merged table is compared with its sources chunk by chunk
+    // (row count and XOR of row MD5s on both servers, ids remapped in SQL on the source side), and the rows of
+    // differing chunks are listed in VERIFY_REPORT. VERIFY_THREADS checksum queries run at once.
+    private static final boolean VERIFY         = Boolean.parseBoolean(dotenv.get("MERGE_VERIFY", "false"));
+    private static final int     VERIFY_THREADS = Integer.parseInt(dotenv.get("VERIFY_THREADS", "4"));
+    private static final String  VERIFY_REPORT  = dotenv.get("VERIFY_REPORT", "verify_report.csv");
+
+    // CSV of LABBENCH unique values renamed to avoid collisions (table, column, labbench id, old -> new)
+    private static final String RENAME_REPORT = dotenv.get("RENAME_REPORT", "rename_report.csv");
+
+    // CSV of sequencing_result links not merged because their reaction or assembly is outside the selected plates
+    private static final String ORPHAN_REPORT = dotenv.get("ORPHAN_REPORT", "orphan_report.csv");
+
     // Which plates to include (by plate.name). If empty, auto-select up to MAX_PLATES by most recent date.
     private static final List<String> PLATE_NAMES_FILTER = Collections.emptyList();
-    private static final int MAX_PLATES = 10; // per schema
+    private static final int MAX_PLATES = Integer.parseInt(dotenv.get("MAX_PLATES", "10")); // per schema, 0 = all
+
+    // ID sets are fetched in sorted chunks of at most KEY_CHUNK_SIZE keys (BETWEEN for dense runs, IN otherwise)
+    private static final int KEY_CHUNK_SIZE = Integer.parseInt(dotenv.get("KEY_CHUNK_SIZE", "1000"));
 
     // Schemas
     private static final String SCHEMA_LIMS     = "lims";
     private static final String SCHEMA_LABBENCH = "labbench";
     private static final String SCHEMA_MERGE    = "limsdev";
 
-    // Tables with simple integer PK
-    private static final Map<String, String> TABLE_PK = new LinkedHashMap<>();
-    static {
-        TABLE_PK.put("thermocycle", "id");
-        TABLE_PK.put("cycle", "id");
-        TABLE_PK.put("state", "id");
-        TABLE_PK.put("pcr_thermocycle", "id");
-        TABLE_PK.put("cyclesequencing_thermocycle", "id");
-
-        TABLE_PK.put("plate", "id"); // composite PK(id,name) in schema; we still map id
-        TABLE_PK.put("extraction", "id");
-        TABLE_PK.put("workflow", "id");
-        TABLE_PK.put("assembly", "id");
-        TABLE_PK.put("failure_reason", "id");
-        TABLE_PK.put("cyclesequencing", "id");
-        TABLE_PK.put("pcr", "id");
-        TABLE_PK.put("traces", "id");
-        TABLE_PK.put("gel_quantification", "id");
-        TABLE_PK.put("gelimages", "id");
-        TABLE_PK.put("pcr_cocktail", "id");
-        TABLE_PK.put("cyclesequencing_cocktail", "id");
-    }
-
-    // FKs that need rewriting (table -> (fkColumn -> referencedTable))
-    private static final Map<String, Map<String, String>> FK_MAP = new HashMap<>();
-    static {
-        FK_MAP.put("cycle", mapOf("thermocycleId", "thermocycle"));
-        FK_MAP.put("state", mapOf("cycleId", "cycle"));
-
-        FK_MAP.put("pcr", mapOf(
-                "plate", "plate",
-                "workflow", "workflow",
-                "cocktail", "pcr_cocktail"
-        ));
-        FK_MAP.put("cyclesequencing", mapOf(
-                "plate", "plate",
-                "workflow", "workflow",
-                "cocktail", "cyclesequencing_cocktail"
-        ));
-        FK_MAP.put("traces", mapOf("reaction", "cyclesequencing"));
-        FK_MAP.put("gel_quantification", mapOf(
-                "extractionId", "extraction",
-                "plate", "plate"
-        ));
-        FK_MAP.put("gelimages", mapOf("plate", "plate"));
-        FK_MAP.put("workflow", mapOf("extractionId", "extraction"));
-        FK_MAP.put("assembly", mapOf(
-                "workflow", "workflow",
-                "failure_reason", "failure_reason"
-        ));
-        // sequencing_result handled separately (composite)
-    }
-
-    // Unique text cols that might collide when mixing LABBENCH
-    private static final Map<String, List<String>> UNIQUE_STR_COLS = new HashMap<>();
+    // References the schema does not declare as FOREIGN KEYs but that still hold remapped ids
+    // (table.column -> referenced table). Values <= 0 mean "none" (thermocycle defaults to -1) and pass through.
+    // Declared FKs, PKs and unique columns are read from information_schema (see SchemaCatalog).
+    private static final Map<String, String> IMPLICIT_REFS = new LinkedHashMap<>();
     static {
-        UNIQUE_STR_COLS.put("workflow", Arrays.asList("name"));
-        UNIQUE_STR_COLS.put("extraction", Arrays.asList("extractionId"));
+        IMPLICIT_REFS.put("extraction.plate", "plate");
+        IMPLICIT_REFS.put("gelimages.plate", "plate");
+        IMPLICIT_REFS.put("plate.thermocycle", "thermocycle");
+        IMPLICIT_REFS.put("pcr.thermocycle", "thermocycle");
+        IMPLICIT_REFS.put("cyclesequencing.thermocycle", "thermocycle");
+        IMPLICIT_REFS.put("pcr_thermocycle.cycle", "thermocycle");
+        IMPLICIT_REFS.put("cyclesequencing_thermocycle.cycle", "thermocycle");
     }
 
     public static void main(String[] args) throws Exception {
+        Metrics metrics = new Metrics();
+        boolean completed = false;
         try (
             Connection srcLims = openSrc(SCHEMA_LIMS);
             Connection srcLab  = openSrc(SCHEMA_LABBENCH);
@@ -123,28 +186,114 @@ public class MergeSubset {
         ) {
             dst.setAutoCommit(false);
 
-            // 1) Global tables first
-            copyGlobalTables(srcLims, srcLab, dst);
-
-            // 2) Build worksets
-            Workset limsSet = buildWorksetForSchema(srcLims, SCHEMA_LIMS);
-            Workset labSet  = buildWorksetForSchema(srcLab, SCHEMA_LABBENCH);
-
-            // 3) Insert LIMS as-is
-            System.out.println("\n== Insert LIMS subset (preserve IDs) ==");
-            insertSubset(dst, limsSet, false);
+            // 0) Read table metadata once, then freeze LABBENCH offsets before anything is inserted
+            //    (or reuse them when resuming)
+            long t0 = System.nanoTime();
+            SchemaCatalog catalog = SchemaCatalog.load(srcLims);
+            metrics.phase("catalog", t0);
+            t0 = System.nanoTime();
+            Checkpoints checkpoints = Checkpoints.open(dst);
+            OffsetPlan plan = OffsetPlan.build(srcLims, srcLab, dst, catalog, checkpoints);
+            metrics.phase("offset plan", t0);
+            t0 = System.nanoTime();
+            UniqueIndex unique = UniqueIndex.load(dst, catalog);
+            metrics.phase("unique index", t0);
+            BlobCache blobs = null;
+            if (BLOB_DEDUP) {
+                t0 = System.nanoTime();
+                blobs = BlobCache.load(dst);
+                metrics.phase("blob index", t0);
+            }
+            MergeContext ctx = new MergeContext(catalog, plan, unique, checkpoints, metrics, blobs);
+
+            // 1) Build worksets (both sources concurrently)
+            t0 = System.nanoTime();
+            List<Workset> worksets = buildWorksets(checkpoints, SCHEMA_LIMS, SCHEMA_LABBENCH);
+            Workset limsSet = worksets.get(0);
+            Workset labSet  = worksets.get(1);
+            checkpoints.begin(dst, plan, limsSet, labSet);
+            metrics.phase("worksets", t0);
+            metrics.expect(limsSet);
+            metrics.expect(labSet);
+            if (MERGE_SHARDS > 0) {
+                t0 = System.nanoTime();
+                unique.settle(catalog, plan, checkpoints, limsSet, labSet);
+                metrics.phase("unique settle", t0);
+            }
 
-            // 4) Insert LABBENCH with ID remap
-            System.out.println("\n== Insert LABBENCH subset (reindex IDs) ==");
-            insertSubset(dst, labSet, true);
+            // 2) Global tables, then the subsets: LIMS as-is, LABBENCH with ID remap.
+            //    Tables run as soon as their FK parents are done.
+            MergeScheduler sched = new MergeScheduler();
+            scheduleGlobalTables(sched, SCHEMA_LIMS, false, ctx);
+            scheduleGlobalTables(sched, SCHEMA_LABBENCH, true, ctx);
+            scheduleSubset(sched, limsSet, false, ctx);
+            scheduleSubset(sched, labSet, true, ctx);
+
+            System.out.println("\n== Merge tables (" + MERGE_THREADS + " thread" + (MERGE_THREADS == 1 ? "" : "s") +
+                    (MERGE_SHARDS > 0 ? ", " + MERGE_SHARDS + " plate shards" : "") + ") ==");
+            t0 = System.nanoTime();
+            metrics.startProgress(PROGRESS_INTERVAL_SEC);
+            sched.run(dst, MERGE_THREADS);
+            metrics.stopProgress();
+            metrics.phase("merge", t0);
+            if (MERGE_SHARDS > 0) {
+                t0 = System.nanoTime();
+                verifyReferences(dst, catalog);
+                metrics.phase("reference check", t0);
+            }
 
+            t0 = System.nanoTime();
+            if (INCREMENTAL) Watermarks.save(dst, plan);
+            checkpoints.finish(dst);
             dst.commit();
+            metrics.phase("commit", t0);
+            ctx.unique.writeReport(Paths.get(RENAME_REPORT));
+            ctx.links.writeReport(Paths.get(ORPHAN_REPORT));
+            if (ctx.blobs != null) ctx.blobs.report();
+            completed = true;
+            if (VERIFY) {
+                System.out.println("\n== Verify ==");
+                t0 = System.nanoTime();
+                new Verifier(ctx).run(Paths.get(VERIFY_REPORT), limsSet, labSet);
+                metrics.phase("verify", t0);
+            }
             System.out.println("\nDONE.");
+        } finally {
+            metrics.stopProgress();
+            // Failed runs get a report too; it shows how far each table got
+            if (!METRICS_REPORT.isEmpty()) {
+                try {
+                    metrics.write(Paths.get(METRICS_REPORT), completed);
+                } catch (IOException e) {
+                    System.out.println("Could not write metrics report: " + e.getMessage());
+                }
+            }
+            closePools();
         }
     }
 
     // ---------- Connections ----------
+    // One pool per schema, opened lazily; every phase borrows through openSrc/openDst and gives the
+    // connection back by closing it
+    private static final Map<String, ConnectionPool> POOLS = new ConcurrentHashMap<>();
+
     private static Connection openSrc(String schema) throws SQLException {
+        return POOLS.computeIfAbsent("src " + schema,
+                name -> new ConnectionPool(name, () -> connectSrc(schema), Math.max(Math.max(MERGE_THREADS, WORKSET_THREADS),
+                        VERIFY ? VERIFY_THREADS : 1) + 1)).borrow();
+    }
+
+    private static Connection openDst(String schema) throws SQLException {
+        return POOLS.computeIfAbsent("dst " + schema,
+                name -> new ConnectionPool(name, () -> connectDst(schema), Math.max(MERGE_THREADS, VERIFY ? VERIFY_THREADS : 1) + 1)).borrow();
+    }
+
+    private static void closePools() {
+        for (ConnectionPool pool : POOLS.values()) pool.close();
+        POOLS.clear();
+    }
+
+    private static Connection connectSrc(String schema) throws SQLException {
         String url = String.format("jdbc:mysql://%s:%d/%s?useSSL=false&serverTimezone=UTC",
                 SRC_HOST, SRC_PORT, schema);
         Properties p = new Properties();
@@ -152,10 +301,12 @@ public class MergeSubset {
         p.setProperty("password", SRC_PASS);
         p.setProperty("useUnicode", "true");
         p.setProperty("characterEncoding", "utf8");
+        if (STREAM_FETCH_SIZE > 0) p.setProperty("useCursorFetch", "true");
+        tune(p, SRC_JDBC_PROPS);
         return DriverManager.getConnection(url, p);
     }
 
-    private static Connection openDst(String schema) throws SQLException {
+    private static Connection connectDst(String schema) throws SQLException {
         String url = String.format("jdbc:mysql://%s:%d/%s?serverTimezone=UTC%s",
                 DST_HOST, DST_PORT, schema, DST_USE_SSL ? "&useSSL=true&requireSSL=true" : "");
         Properties p = new Properties();
@@ -163,357 +314,3148 @@ public class MergeSubset {
         p.setProperty("password", DST_PASS);
         p.setProperty("useUnicode", "true");
         p.setProperty("characterEncoding", "utf8");
+        // Required for setLocalInfileInputStream; DEST is a server we trust with LOCAL INFILE requests
+        if (BULK_LOAD) p.setProperty("allowLoadLocalInfile", "true");
+        tune(p, DST_JDBC_PROPS);
         return DriverManager.getConnection(url, p);
     }
 
-    // ---------- Workset ----------
-    private static class Workset {
-        String schema;
-        Map<String, Set<Long>> ids = new LinkedHashMap<>();
-        Set<Long> pcrCocktailIds = new HashSet<>();
-        Set<Long> csCocktailIds  = new HashSet<>();
-        Set<Long> reactionIds    = new HashSet<>();
-        Set<Long> assemblyIds    = new HashSet<>();
+    /** Statement caching and batching properties, then any raw overrides from .env. */
+    private static void tune(Properties p, String extra) {
+        // Multi-row INSERTs per executeBatch instead of one round trip per row
+        p.setProperty("rewriteBatchedStatements", Boolean.toString(JDBC_REWRITE_BATCHED));
+        // Chunk queries are padded to a few shapes (see KeyChunk), so server-side statements get reused
+        p.setProperty("useServerPrepStmts", Boolean.toString(JDBC_SERVER_PREP));
+        p.setProperty("cachePrepStmts", Boolean.toString(JDBC_CACHE_PREP));
+        p.setProperty("prepStmtCacheSize", Integer.toString(JDBC_PREP_CACHE_SIZE));
+        p.setProperty("prepStmtCacheSqlLimit", Integer.toString(JDBC_PREP_CACHE_LIMIT));
+        // Pool resets (autocommit, rollback) skip the server when nothing changed
+        p.setProperty("useLocalSessionState", "true");
+        p.setProperty("useLocalTransactionState", "true");
+        for (String kv : extra.split("&")) {
+            int eq = kv.indexOf('=');
+            if (eq > 0) p.setProperty(kv.substring(0, eq).trim(), kv.substring(eq + 1).trim());
+        }
+    }
+
+    @FunctionalInterface
+    private interface Connector {
+        Connection open() throws SQLException;
     }
 
-    private static Workset buildWorksetForSchema(Connection src, String schema) throws SQLException {
-        System.out.println("\nBuilding workset for " + schema);
-        Workset ws = new Workset();
-        ws.schema = schema;
+    /**
+     * Bounded pool of physical connections to one schema. {@link #borrow} hands out a proxy whose
+     * close() resets the connection (rollback, autocommit on) and returns it, so callers keep their
+     * try-with-resources. Connections open on demand up to {@code size}; further borrowers wait.
+     * Connections idle longer than VALIDATE_AFTER_MS are pinged before reuse.
+     */
+    private static final class ConnectionPool implements AutoCloseable {
+        private static final long VALIDATE_AFTER_MS = 30_000;
+
+        private final String name;
+        private final Connector connector;
+        private final Semaphore permits;
+        private final Deque<Connection> idle = new ArrayDeque<>();
+        private final Map<Connection, Long> idleSince = new HashMap<>();
+        private final Set<Connection> opened = ConcurrentHashMap.newKeySet();
+        private int handshakes;
+
+        ConnectionPool(String name, Connector connector, int size) {
+            this.name = name;
+            this.connector = connector;
+            this.permits = new Semaphore(Math.max(1, size));
+        }
+
+        Connection borrow() throws SQLException {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted waiting for a " + name + " connection", e);
+            }
+            try {
+                Connection c = takeIdle();
+                if (c == null) {
+                    synchronized (this) { handshakes++; }
+                    c = connector.open();
+                    opened.add(c);
+                }
+                return wrap(c);
+            } catch (SQLException | RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        }
 
-        List<Long> plateIds = selectPlateIds(src);
-        ws.ids.put("plate", new LinkedHashSet<>(plateIds));
-        System.out.println("  Plates: " + plateIds);
+        /** Most recently used idle connection, or null to open a new one; stale ones are validated or dropped. */
+        private Connection takeIdle() {
+            Connection c;
+            long since;
+            synchronized (this) {
+                c = idle.pollFirst();
+                if (c == null) return null;
+                since = idleSince.remove(c);
+            }
+            try {
+                if (System.currentTimeMillis() - since < VALIDATE_AFTER_MS || c.isValid(2)) return c;
+            } catch (SQLException ignore) {
+                // fall through and drop it
+            }
+            discard(c);
+            return takeIdle();
+        }
 
-        Set<Long> extractionIds = selectIds(src,
-            "SELECT id FROM extraction WHERE plate IN (" + placeholders(plateIds.size()) + ")", plateIds);
-        ws.ids.put("extraction", extractionIds);
+        private void release(Connection c) {
+            try {
+                if (!c.isClosed() && !c.getAutoCommit()) {
+                    c.rollback();
+                    c.setAutoCommit(true);
+                }
+                c.clearWarnings();
+                synchronized (this) {
+                    idle.addFirst(c);
+                    idleSince.put(c, System.currentTimeMillis());
+                }
+            } catch (SQLException e) {
+                discard(c);
+            } finally {
+                permits.release();
+            }
+        }
 
-        Set<Long> workflowIds = selectIds(src,
-            "SELECT id FROM workflow WHERE extractionId IN (" + placeholders(extractionIds.size()) + ")", extractionIds);
-        ws.ids.put("workflow", workflowIds);
+        private void discard(Connection c) {
+            opened.remove(c);
+            try {
+                c.close();
+            } catch (SQLException ignore) {
+                // already broken
+            }
+        }
 
-        Set<Long> assemblyIds = selectIds(src,
-            "SELECT id FROM assembly WHERE workflow IN (" + placeholders(workflowIds.size()) + ")", workflowIds);
-        ws.ids.put("assembly", assemblyIds);
-        ws.assemblyIds.addAll(assemblyIds);
+        private Connection wrap(Connection c) {
+            AtomicBoolean returned = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, (proxy, m, args) -> {
+                        if (m.getDeclaringClass() == Object.class) {
+                            return m.getName().equals("equals") ? proxy == args[0] : m.invoke(c, args);
+                        }
+                        switch (m.getName()) {
+                            case "close":
+                                if (returned.compareAndSet(false, true)) release(c);
+                                return null;
+                            case "isClosed":
+                                return returned.get() || c.isClosed();
+                            default:
+                                if (returned.get()) throw new SQLException("Connection already returned to " + name);
+                                try {
+                                    return m.invoke(c, args);
+                                } catch (InvocationTargetException e) {
+                                    throw e.getCause();
+                                }
+                        }
+                    });
+        }
 
-        Set<Long> frIds = selectIds(src,
-            "SELECT DISTINCT failure_reason FROM assembly WHERE failure_reason IS NOT NULL AND workflow IN (" +
-                placeholders(workflowIds.size()) + ")", workflowIds);
-        if (!frIds.isEmpty()) ws.ids.put("failure_reason", frIds);
+        @Override
+        public void close() {
+            for (Connection c : opened) discard(c);
+            synchronized (this) {
+                idle.clear();
+                idleSince.clear();
+                System.out.println("Pool " + name + ": " + handshakes + " connection(s) opened");
+            }
+        }
+    }
 
-        Set<Long> csIds = selectIds(src,
-            "SELECT id FROM cyclesequencing WHERE plate IN (" + placeholders(plateIds.size()) + ")", plateIds);
-        ws.ids.put("cyclesequencing", csIds);
-        ws.reactionIds.addAll(csIds);
+    // ---------- Schema catalog ----------
+    /**
+     * Table metadata read once from the LIMS source's information_schema: column order and types,
+     * primary keys, declared FOREIGN KEYs (plus {@link #IMPLICIT_REFS}) and single-column unique
+     * string indexes. DEST is assumed to share the structure, so the same plans drive every copy.
+     */
+    private static final class SchemaCatalog {
+        private final Map<String, TablePlan> tables;
+
+        private SchemaCatalog(Map<String, TablePlan> tables) {
+            this.tables = Collections.unmodifiableMap(tables);
+        }
 
-        Set<Long> pcrIds = selectIds(src,
-            "SELECT id FROM pcr WHERE plate IN (" + placeholders(plateIds.size()) + ")", plateIds);
-        ws.ids.put("pcr", pcrIds);
+        static SchemaCatalog load(Connection src) throws SQLException {
+            Map<String, List<String>> columns = new LinkedHashMap<>();
+            Map<String, List<String>> dataTypes = new HashMap<>();
+            Map<String, String> autoIncrement = new HashMap<>();
+            String sql = "SELECT TABLE_NAME, COLUMN_NAME, DATA_TYPE, EXTRA FROM information_schema.COLUMNS" +
+                         " WHERE TABLE_SCHEMA = DATABASE() ORDER BY TABLE_NAME, ORDINAL_POSITION";
+            try (Statement st = src.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+                while (rs.next()) {
+                    String table = rs.getString(1);
+                    columns.computeIfAbsent(table, k -> new ArrayList<>()).add(rs.getString(2));
+                    dataTypes.computeIfAbsent(table, k -> new ArrayList<>()).add(rs.getString(3));
+                    String extra = rs.getString(4);
+                    if (extra != null && extra.toLowerCase(Locale.ROOT).contains("auto_increment")) {
+                        autoIncrement.put(table, rs.getString(2));
+                    }
+                }
+            }
 
-        ws.pcrCocktailIds = selectIds(src,
-            "SELECT DISTINCT cocktail FROM pcr WHERE plate IN (" + placeholders(plateIds.size()) + ")", plateIds);
-        ws.csCocktailIds = selectIds(src,
-            "SELECT DISTINCT cocktail FROM cyclesequencing WHERE plate IN (" + placeholders(plateIds.size()) + ")", plateIds);
+            Map<String, List<String>> primary = new HashMap<>();
+            Map<String, Map<String, String>> refs = new HashMap<>();
+            sql = "SELECT TABLE_NAME, COLUMN_NAME, CONSTRAINT_NAME, REFERENCED_TABLE_NAME" +
+                  " FROM information_schema.KEY_COLUMN_USAGE WHERE TABLE_SCHEMA = DATABASE()" +
+                  " AND (CONSTRAINT_NAME = 'PRIMARY' OR REFERENCED_TABLE_NAME IS NOT NULL)" +
+                  " ORDER BY TABLE_NAME, CONSTRAINT_NAME, ORDINAL_POSITION";
+            try (Statement st = src.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+                while (rs.next()) {
+                    if ("PRIMARY".equals(rs.getString(3))) {
+                        primary.computeIfAbsent(rs.getString(1), k -> new ArrayList<>()).add(rs.getString(2));
+                    } else {
+                        refs.computeIfAbsent(rs.getString(1), k -> new HashMap<>()).put(rs.getString(2), rs.getString(4));
+                    }
+                }
+            }
 
-        Set<Long> traceIds = selectIds(src,
-            "SELECT id FROM traces WHERE reaction IN (" + placeholders(csIds.size()) + ")", csIds);
-        ws.ids.put("traces", traceIds);
+            Map<String, Set<String>> unique = new HashMap<>();
+            sql = "SELECT s.TABLE_NAME, MIN(s.COLUMN_NAME) FROM information_schema.STATISTICS s" +
+                  " JOIN information_schema.COLUMNS c ON c.TABLE_SCHEMA = s.TABLE_SCHEMA" +
+                  "  AND c.TABLE_NAME = s.TABLE_NAME AND c.COLUMN_NAME = s.COLUMN_NAME" +
+                  " WHERE s.TABLE_SCHEMA = DATABASE() AND s.NON_UNIQUE = 0 AND s.INDEX_NAME <> 'PRIMARY'" +
+                  " GROUP BY s.TABLE_NAME, s.INDEX_NAME" +
+                  " HAVING COUNT(*) = 1 AND MIN(c.DATA_TYPE) IN ('char', 'varchar')";
+            try (Statement st = src.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+                while (rs.next()) unique.computeIfAbsent(rs.getString(1), k -> new HashSet<>()).add(rs.getString(2));
+            }
 
-        Set<Long> gqIds = selectIds(src,
-            "SELECT id FROM gel_quantification WHERE plate IN (" + placeholders(plateIds.size()) + ")", plateIds);
-        ws.ids.put("gel_quantification", gqIds);
+            Map<String, TablePlan> tables = new LinkedHashMap<>();
+            int declared = 0, implicit = 0, uniqueCols = 0;
+            for (Map.Entry<String, List<String>> e : columns.entrySet()) {
+                String table = e.getKey();
+                Map<String, String> declaredRefs = refs.getOrDefault(table, Collections.emptyMap());
+                TablePlan t = new TablePlan(table, e.getValue(), dataTypes.get(table),
+                        idColumn(primary.get(table), autoIncrement.get(table)),
+                        declaredRefs, unique.getOrDefault(table, Collections.emptySet()));
+                tables.put(table, t);
+                for (int i = 0; i < t.columns.length; i++) {
+                    if (t.refs[i] != null && t.implicit[i]) implicit++;
+                    else if (t.refs[i] != null) declared++;
+                    if (t.unique[i]) uniqueCols++;
+                }
+            }
+            SchemaCatalog catalog = new SchemaCatalog(tables);
+            catalog.copied(); // fail before anything is planned if a merged table is missing
+            System.out.println("Schema catalog: " + tables.size() + " tables, " + declared + " declared FKs, "
+                    + implicit + " implicit refs, " + uniqueCols + " unique string columns");
+            return catalog;
+        }
 
-        Set<Long> giIds = selectIds(src,
-            "SELECT id FROM gelimages WHERE plate IN (" + placeholders(plateIds.size()) + ")", plateIds);
-        ws.ids.put("gelimages", giIds);
+        /** The id column remapped for a table: its AUTO_INCREMENT PK column, else a single-column PK. */
+        private static String idColumn(List<String> pk, String autoIncrement) {
+            if (pk == null) return null;
+            if (autoIncrement != null && pk.contains(autoIncrement)) return autoIncrement;
+            return pk.size() == 1 ? pk.get(0) : null;
+        }
 
-        if (!ws.pcrCocktailIds.isEmpty()) ws.ids.put("pcr_cocktail", ws.pcrCocktailIds);
-        if (!ws.csCocktailIds.isEmpty())  ws.ids.put("cyclesequencing_cocktail", ws.csCocktailIds);
+        TablePlan table(String table) {
+            TablePlan t = tables.get(table);
+            if (t == null) throw new IllegalArgumentException("Table " + table + " not found in source schema");
+            return t;
+        }
 
-        return ws;
+        /** Plans of the tables the merge copies, global ones first. */
+        List<TablePlan> copied() {
+            List<TablePlan> out = new ArrayList<>();
+            for (String table : GLOBAL_TABLES) out.add(table(table));
+            for (String table : SUBSET_TABLES) out.add(table(table));
+            return out;
+        }
     }
 
-    private static List<Long> selectPlateIds(Connection src) throws SQLException {
-        List<Long> out = new ArrayList<>();
-        String sql;
-        List<Object> params = new ArrayList<>();
-        if (!PLATE_NAMES_FILTER.isEmpty()) {
-            sql = "SELECT id FROM plate WHERE name IN (" + placeholders(PLATE_NAMES_FILTER.size()) +
-                  ") ORDER BY date DESC, id DESC LIMIT ?";
-            params.addAll(PLATE_NAMES_FILTER);
-            params.add(MAX_PLATES);
-        } else {
-            sql = "SELECT id FROM plate ORDER BY date DESC, id DESC LIMIT ?";
-            params.add(MAX_PLATES);
+    /**
+     * Everything the copy loop needs to know about one table. Arrays are indexed by column position:
+     * column i is result column i + 1 of {@link #selectSql} and parameter i + 1 of {@link #insertSql},
+     * so rows move by ordinal without consulting result set metadata.
+     */
+    static final class TablePlan {
+        final String table;
+        final String[] columns;
+        final int[] types;
+        final String pk;          // remapped id column; null when the table has none (sequencing_result)
+        final int pkIndex;        // -1 without pk
+        final String[] refs;      // table whose ids the column holds, or null
+        final boolean[] implicit; // ref comes from IMPLICIT_REFS
+        final boolean[] unique;
+        final boolean[] binary;
+        final boolean[] text;
+        final Transfer[] transfer;
+        final boolean hasLob;
+        private final String columnList;
+
+        TablePlan(String table, List<String> columns, List<String> dataTypes, String pk,
+                  Map<String, String> declaredRefs, Set<String> uniqueColumns) {
+            int n = columns.size();
+            this.table = table;
+            this.columns = columns.toArray(new String[0]);
+            this.types = new int[n];
+            this.pk = pk;
+            this.refs = new String[n];
+            this.implicit = new boolean[n];
+            this.unique = new boolean[n];
+            this.binary = new boolean[n];
+            this.text = new boolean[n];
+            this.transfer = new Transfer[n];
+            int pkIndex = -1;
+            boolean hasLob = false;
+            for (int i = 0; i < n; i++) {
+                String col = this.columns[i];
+                types[i] = sqlType(dataTypes.get(i));
+                if (col.equals(pk)) pkIndex = i;
+                refs[i] = declaredRefs.get(col);
+                if (refs[i] == null) {
+                    refs[i] = IMPLICIT_REFS.get(table + "." + col);
+                    implicit[i] = refs[i] != null;
+                }
+                unique[i] = uniqueColumns.contains(col);
+                binary[i] = isBinaryLob(types[i]);
+                text[i] = isTextLob(types[i]);
+                hasLob |= binary[i] || text[i];
+                // Remapped ids always move as longs, whatever integer type holds them
+                transfer[i] = col.equals(pk) || refs[i] != null ? Transfer.LONG : Transfer.of(types[i]);
+            }
+            this.pkIndex = pkIndex;
+            this.hasLob = hasLob;
+            StringJoiner list = new StringJoiner(", ");
+            for (String col : this.columns) list.add("`" + col + "`");
+            this.columnList = list.toString();
         }
-        try (PreparedStatement ps = src.prepareStatement(sql)) {
-            bind(ps, params);
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) out.add(rs.getLong(1));
+
+        String requirePk() {
+            if (pk == null) throw new IllegalArgumentException("No integer PK for table " + table);
+            return pk;
+        }
+
+        String selectSql() {
+            return "SELECT " + columnList + " FROM " + table;
+        }
+
+        /**
+         * INSERT of every column; with {@code upsert}, rows already in DEST take the new values for every
+         * column except the PK and the unique (possibly renamed) ones.
+         */
+        String insertSql(boolean upsert) {
+            String sql = "INSERT INTO " + table + " (" + columnList + ") VALUES (" + placeholders(columns.length) + ")";
+            if (!upsert) return sql;
+            List<String> sets = new ArrayList<>();
+            for (int i = 0; i < columns.length; i++) {
+                if (i == pkIndex || unique[i]) continue;
+                sets.add("`" + columns[i] + "` = VALUES(`" + columns[i] + "`)");
+            }
+            return sets.isEmpty() ? sql : sql + " ON DUPLICATE KEY UPDATE " + String.join(", ", sets);
+        }
+
+        List<String> referencedTables() {
+            List<String> out = new ArrayList<>();
+            for (String ref : refs) if (ref != null && !out.contains(ref)) out.add(ref);
+            return out;
+        }
+
+        List<String> uniqueColumns() {
+            List<String> out = new ArrayList<>();
+            for (int i = 0; i < columns.length; i++) if (unique[i]) out.add(columns[i]);
+            return out;
+        }
+
+        /** java.sql.Types for an information_schema DATA_TYPE, as Connector/J reports it. */
+        private static int sqlType(String dataType) {
+            switch (dataType.toLowerCase(Locale.ROOT)) {
+                case "tinyint":    return Types.TINYINT;
+                case "smallint":   return Types.SMALLINT;
+                case "mediumint":
+                case "int":        return Types.INTEGER;
+                case "bigint":     return Types.BIGINT;
+                case "decimal":    return Types.DECIMAL;
+                case "float":      return Types.REAL;
+                case "double":     return Types.DOUBLE;
+                case "bit":        return Types.BIT;
+                case "date":
+                case "year":       return Types.DATE;
+                case "time":       return Types.TIME;
+                case "datetime":
+                case "timestamp":  return Types.TIMESTAMP;
+                case "char":
+                case "enum":
+                case "set":        return Types.CHAR;
+                case "varchar":
+                case "tinytext":   return Types.VARCHAR;
+                case "text":
+                case "mediumtext":
+                case "longtext":
+                case "json":       return Types.LONGVARCHAR;
+                case "binary":     return Types.BINARY;
+                case "varbinary":
+                case "tinyblob":   return Types.VARBINARY;
+                case "blob":
+                case "mediumblob":
+                case "longblob":   return Types.LONGVARBINARY;
+                default:           return Types.OTHER;
             }
         }
-        return out;
     }
 
-    private static Set<Long> selectIds(Connection conn, String sql, Collection<?> values) throws SQLException {
-        if (values == null || values.isEmpty()) return new LinkedHashSet<>();
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            bind(ps, new ArrayList<>(values));
-            Set<Long> out = new LinkedHashSet<>();
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) out.add(rs.getLong(1));
+    /**
+     * How the copy loops move one column: primitive getters and setters for numbers, getString and
+     * setString for short strings, streams for LOBs (byte[] and String when pipelined), and
+     * getObject/setObject only for what is left (dates, decimals, BIT). Chosen once per table from
+     * the catalog's column types, so the driver never has to infer a parameter type.
+     */
+    private enum Transfer {
+        LONG, DOUBLE, STRING, BYTES, CHARS, OBJECT;
+
+        static Transfer of(int sqlType) {
+            switch (sqlType) {
+                case Types.TINYINT:
+                case Types.SMALLINT:
+                case Types.INTEGER:
+                case Types.BIGINT:  return LONG;
+                case Types.REAL:
+                case Types.FLOAT:
+                case Types.DOUBLE:  return DOUBLE;
+                case Types.CHAR:
+                case Types.VARCHAR: return STRING;
+                default:
+                    if (isBinaryLob(sqlType)) return BYTES;
+                    if (isTextLob(sqlType)) return CHARS;
+                    return OBJECT;
             }
-            return out;
         }
     }
 
-    // ---------- Global tables ----------
-    private static void copyGlobalTables(Connection srcLims, Connection srcLab, Connection dst) throws SQLException {
-        System.out.println("Copying global tables: thermocycle, cycle, state, pcr_thermocycle, cyclesequencing_thermocycle");
-        insertWholeTable(dst, srcLims, "thermocycle", false);
-        insertWholeTable(dst, srcLims, "cycle", false);
-        insertWholeTable(dst, srcLims, "state", false);
-        insertWholeTable(dst, srcLims, "pcr_thermocycle", false);
-        insertWholeTable(dst, srcLims, "cyclesequencing_thermocycle", false);
-
-        insertWholeTable(dst, srcLab, "thermocycle", true);
-        insertWholeTable(dst, srcLab, "cycle", true);
-        insertWholeTable(dst, srcLab, "state", true);
-        insertWholeTable(dst, srcLab, "pcr_thermocycle", true);
-        insertWholeTable(dst, srcLab, "cyclesequencing_thermocycle", true);
-    }
-
-    private static void insertWholeTable(Connection dst, Connection src, String table, boolean reindex) throws SQLException {
-        String pk = TABLE_PK.get(table);
-        if (pk == null) throw new IllegalArgumentException("No PK known for table " + table);
-        System.out.println("  -> " + table + (reindex ? " (LABBENCH reindex)" : " (LIMS as-is)"));
-
-        long offset = reindex ? currentMaxId(dst, table, pk) : 0L;
-        Map<Long, Long> idMap = new HashMap<>();
-
-        String sql = "SELECT * FROM " + table;
-        try (Statement st = src.createStatement(); ResultSet rs = st.executeQuery(sql)) {
-            insertResultSet(dst, table, rs, reindex, pk, idMap, offset, Collections.emptyMap());
+    // ---------- Offset plan ----------
+    /**
+     * Immutable id mapping for every table of both sources, read before any insert happens.
+     * LIMS ids map to themselves; LABBENCH ids get a per-table offset of max(DEST max, LIMS max),
+     * less the previous watermark in incremental mode so new rows pack right above what DEST holds.
+     * Once an incremental run has placed LABBENCH rows above the LIMS watermark, later LIMS rows could
+     * land on them, so those get an offset too and LABBENCH packs above them. Every PK/FK remap goes
+     * through an {@link IdRemap}, so no MAX(id) query is issued while copying and the offsets cannot
+     * drift as rows land in DEST; in incremental mode each range of new DEST ids is first checked to be free.
+     */
+    static final class OffsetPlan {
+        private final Map<String, IdRemap> lims;
+        private final Map<String, IdRemap> labbench;
+
+        OffsetPlan(Map<String, IdRemap> lims, Map<String, IdRemap> labbench) {
+            this.lims = Collections.unmodifiableMap(new LinkedHashMap<>(lims));
+            this.labbench = Collections.unmodifiableMap(new LinkedHashMap<>(labbench));
+        }
+
+        static OffsetPlan build(Connection srcLims, Connection srcLab, Connection dst, SchemaCatalog catalog,
+                                Checkpoints checkpoints) throws SQLException {
+            Map<String, List<Segment>> history = INCREMENTAL ? Watermarks.load(dst) : Collections.emptyMap();
+            Map<String, String> changeCols = INCREMENTAL ? changeColumns(srcLims) : Collections.emptyMap();
+
+            System.out.println("\nOffset plan (LABBENCH id -> id + offset):");
+            System.out.println(String.format("  %-28s %12s %12s %12s %12s  %s",
+                    "table", "dest max", "lims max", "labbench max", "offset", "labbench target range"));
+            Map<String, IdRemap> lims = new LinkedHashMap<>();
+            Map<String, IdRemap> labbench = new LinkedHashMap<>();
+            for (TablePlan t : catalog.copied()) {
+                if (t.pk == null) continue;
+                String table = t.table;
+                String pk = t.pk;
+                String changeCol = changeCols.get(table);
+                long dstMax  = currentMaxId(dst, table, pk);
+                long limsMax = currentMaxId(srcLims, table, pk);
+                long labMax  = currentMaxId(srcLab, table, pk);
+                List<Segment> limsHist = history.getOrDefault(node(SCHEMA_LIMS, table), Collections.emptyList());
+                List<Segment> labHist  = history.getOrDefault(node(SCHEMA_LABBENCH, table), Collections.emptyList());
+
+                // LIMS keeps its ids until an earlier run has merged the table and put LABBENCH rows above the
+                // LIMS watermark; from then on new LIMS rows pack above DEST too, as their own ids may be taken
+                long limsWm = Segment.watermark(limsHist);
+                boolean merged = !limsHist.isEmpty() || !labHist.isEmpty();
+                long limsOffset = merged ? Math.max(dstMax, limsWm) - limsWm : 0L;
+                // LABBENCH must start above both the LIMS rows and whatever DEST already holds
+                long limsTop = Math.max(limsMax, limsWm) + limsOffset;
+                long labWm = Segment.watermark(labHist);
+                long offset = Math.max(dstMax, limsTop) - labWm;
+
+                // A resumed run must keep the offsets and snapshot bounds it started with
+                Checkpoints.Frozen limsFrozen = checkpoints.frozen(SCHEMA_LIMS, table);
+                Checkpoints.Frozen labFrozen  = checkpoints.frozen(SCHEMA_LABBENCH, table);
+                if (limsFrozen != null) {
+                    limsMax = limsFrozen.high;
+                    limsOffset = limsFrozen.offset;
+                }
+                if (labFrozen != null) {
+                    labMax = labFrozen.high;
+                    offset = labFrozen.offset;
+                }
+
+                IdRemap l = new IdRemap(SCHEMA_LIMS, table, limsHist, limsMax, limsOffset,
+                        changeCol, currentMaxChange(srcLims, table, changeCol));
+                IdRemap b = new IdRemap(SCHEMA_LABBENCH, table, labHist, labMax, offset,
+                        changeCol, currentMaxChange(srcLab, table, changeCol));
+                lims.put(table, l);
+                labbench.put(table, b);
+                System.out.println(String.format("  %-28s %12d %12d %12d %12d  (%d, %d]",
+                        table, dstMax, limsMax, labMax, offset, b.watermark + offset, b.high + offset));
+                if (INCREMENTAL) {
+                    System.out.println(String.format("  %-28s lims (%d, %d] -> +%d%s, labbench (%d, %d]%s", "",
+                            l.watermark, l.high, l.offset,
+                            l.changedSince == null ? "" : " + " + changeCol + " >= " + l.changedSince,
+                            b.watermark, b.high, b.changedSince == null ? "" : " + " + changeCol + " >= " + b.changedSince));
+                }
+                // Only incremental runs expect DEST to hold rows already; elsewhere a clash stays a duplicate key
+                if (INCREMENTAL) {
+                    if (limsFrozen == null) checkFree(dst, t, l);
+                    if (labFrozen == null) checkFree(dst, t, b);
+                }
+            }
+            return new OffsetPlan(lims, labbench);
+        }
+
+        /**
+         * Fails the run before any insert when DEST already holds an id of the range {@code r} will give
+         * new rows; an upsert would otherwise overwrite that row and a plain insert collide with it.
+         * Resumed tables are skipped: their ranges hold the rows of the interrupted attempt.
+         */
+        private static void checkFree(Connection dst, TablePlan t, IdRemap r) throws SQLException {
+            if (r.high <= r.watermark) return;
+            long from = r.watermark + r.offset;
+            long to = r.high + r.offset;
+            String sql = "SELECT MIN(" + t.pk + ") FROM " + t.table + " WHERE " + t.pk + " > ? AND " + t.pk + " <= ?";
+            try (PreparedStatement ps = dst.prepareStatement(sql)) {
+                ps.setLong(1, from);
+                ps.setLong(2, to);
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    long taken = rs.getLong(1);
+                    if (rs.wasNull()) return;
+                    throw new IllegalStateException("DEST " + t.table + " already holds id " + taken + ", inside the range (" +
+                            from + ", " + to + "] planned for new " + node(r.schema, t.table) + " rows");
+                }
+            }
+        }
+
+        IdRemap forTable(String table, boolean reindex) {
+            IdRemap r = (reindex ? labbench : lims).get(table);
+            if (r == null) throw new IllegalArgumentException("No offset planned for table " + table);
+            return r;
+        }
+
+        long remap(String table, long oldId, boolean reindex) {
+            return forTable(table, reindex).map(oldId);
+        }
+
+        List<IdRemap> all() {
+            List<IdRemap> out = new ArrayList<>(lims.values());
+            out.addAll(labbench.values());
+            return out;
         }
     }
 
-    // ---------- Insert subset ----------
-    private static void insertSubset(Connection dst, Workset ws, boolean reindex) throws SQLException {
-        Map<String, Map<Long, Long>> idMaps = new HashMap<>();
+    /**
+     * Old -> new ids of one source table. Earlier incremental runs each merged a range
+     * (previous high, high] with their own offset; this run covers (watermark, high] and anything
+     * above it with {@link #offset}. Rows at or below the watermark are only revisited when their
+     * change column moved past {@link #changedSince}.
+     */
+    static final class IdRemap {
+        final String schema;
+        final String table;
+        final long watermark;
+        final long high;
+        final long offset;
+        final String changeColumn;
+        final Timestamp changedSince;
+        final Timestamp maxChange;
+        private final long[] highs;
+        private final long[] offsets;
+
+        IdRemap(String schema, String table, List<Segment> history, long srcMax, long offset,
+                String changeColumn, Timestamp maxChange) {
+            this.schema = schema;
+            this.table = table;
+            this.watermark = Segment.watermark(history);
+            this.high = Math.max(srcMax, watermark);
+            this.offset = offset;
+            this.changeColumn = changeColumn;
+            this.changedSince = changeColumn == null ? null : Segment.maxChange(history);
+            this.maxChange = maxChange;
+            highs = new long[history.size() + 1];
+            offsets = new long[history.size() + 1];
+            for (int i = 0; i < history.size(); i++) {
+                highs[i] = history.get(i).high;
+                offsets[i] = history.get(i).offset;
+            }
+            highs[history.size()] = Long.MAX_VALUE;
+            offsets[history.size()] = offset;
+        }
 
-        insertByIds(dst, ws.schema, "plate", ws.ids.get("plate"), reindex, idMaps);
-        insertByIds(dst, ws.schema, "extraction", ws.ids.get("extraction"), reindex, idMaps);
-        insertByIds(dst, ws.schema, "workflow", ws.ids.get("workflow"), reindex, idMaps);
+        long map(long oldId) {
+            int i = Arrays.binarySearch(highs, oldId);
+            return oldId + offsets[i < 0 ? -i - 1 : i];
+        }
 
-        if (ws.ids.containsKey("failure_reason")) {
-            insertByIds(dst, ws.schema, "failure_reason", ws.ids.get("failure_reason"), reindex, idMaps);
+        /** {@link #map} as a SQL expression over {@code col}, for checksums computed on the source. */
+        String sql(String col) {
+            boolean identity = true;
+            for (long o : offsets) identity &= o == 0;
+            if (identity) return col;
+            String c = "CAST(" + col + " AS SIGNED)";
+            if (highs.length == 1) return "(" + c + " + " + offsets[0] + ")";
+            StringBuilder b = new StringBuilder("CASE");
+            for (int i = 0; i < highs.length - 1; i++) {
+                b.append(" WHEN ").append(c).append(" <= ").append(highs[i]).append(" THEN ").append(c)
+                 .append(" + ").append(offsets[i]);
+            }
+            return b.append(" ELSE ").append(c).append(" + ").append(offsets[highs.length - 1]).append(" END").toString();
         }
 
-        insertByIds(dst, ws.schema, "assembly", ws.ids.get("assembly"), reindex, idMaps);
+        /** True for rows an earlier incremental run already merged. */
+        boolean merged(long oldId) {
+            return oldId <= watermark;
+        }
 
-        if (ws.ids.containsKey("pcr_cocktail")) insertByIds(dst, ws.schema, "pcr_cocktail", ws.ids.get("pcr_cocktail"), reindex, idMaps);
-        if (ws.ids.containsKey("cyclesequencing_cocktail")) insertByIds(dst, ws.schema, "cyclesequencing_cocktail", ws.ids.get("cyclesequencing_cocktail"), reindex, idMaps);
+        /** Changed rows come back as upserts; only tables with a change column have them. */
+        boolean upserts() {
+            return changedSince != null;
+        }
 
-        insertByIds(dst, ws.schema, "pcr", ws.ids.get("pcr"), reindex, idMaps);
-        insertByIds(dst, ws.schema, "cyclesequencing", ws.ids.get("cyclesequencing"), reindex, idMaps);
-        insertByIds(dst, ws.schema, "traces", ws.ids.get("traces"), reindex, idMaps);
-        insertByIds(dst, ws.schema, "gel_quantification", ws.ids.get("gel_quantification"), reindex, idMaps);
-        insertByIds(dst, ws.schema, "gelimages", ws.ids.get("gelimages"), reindex, idMaps);
+        /** Extra WHERE conjunct limiting a copy to rows that are new or changed since the last run. */
+        String deltaPredicate(String pk) {
+            if (!INCREMENTAL) return "";
+            String p = " AND `" + pk + "` <= ? AND (`" + pk + "` > ?";
+            if (changedSince != null) p += " OR `" + changeColumn + "` >= ?";
+            return p + ")";
+        }
 
-        insertSequencingResult(dst, ws.schema, ws.reactionIds, ws.assemblyIds, reindex, idMaps);
+        int bindDelta(PreparedStatement ps, int from) throws SQLException {
+            if (!INCREMENTAL) return from;
+            ps.setLong(from++, high);
+            ps.setLong(from++, watermark);
+            if (changedSince != null) ps.setTimestamp(from++, changedSince);
+            return from;
+        }
     }
 
-    private static void insertByIds(Connection dst, String srcSchema, String table, Set<Long> ids, boolean reindex,
-                                    Map<String, Map<Long, Long>> idMaps) throws SQLException {
-        if (ids == null || ids.isEmpty()) return;
-        String pk = TABLE_PK.get(table);
-        if (pk == null) throw new IllegalArgumentException("No PK declared for table " + table);
+    // ---------- Watermarks ----------
+    /** One persisted incremental run of a source table: ids up to {@code high} shifted by {@code offset}. */
+    static final class Segment {
+        final long high;
+        final long offset;
+        final Timestamp maxChange;
+
+        Segment(long high, long offset, Timestamp maxChange) {
+            this.high = high;
+            this.offset = offset;
+            this.maxChange = maxChange;
+        }
 
-        long offset = reindex ? currentMaxId(dst, table, pk) : 0L;
-        Map<Long, Long> idMap = new HashMap<>();
+        static long watermark(List<Segment> history) {
+            return history.isEmpty() ? 0L : history.get(history.size() - 1).high;
+        }
 
-        try (Connection src = openSrc(srcSchema)) {
-            String sql = "SELECT * FROM " + table + " WHERE " + pk + " IN (" + placeholders(ids.size()) + ")";
-            try (PreparedStatement ps = src.prepareStatement(sql)) {
-                bind(ps, new ArrayList<>(ids));
-                try (ResultSet rs = ps.executeQuery()) {
-                    insertResultSet(dst, table, rs, reindex, pk, idMap, offset, idMaps);
+        static Timestamp maxChange(List<Segment> history) {
+            Timestamp max = null;
+            for (Segment seg : history) {
+                if (seg.maxChange != null && (max == null || seg.maxChange.after(max))) max = seg.maxChange;
+            }
+            return max;
+        }
+    }
+
+    /**
+     * Incremental-mode bookkeeping kept in DEST: one row per source table and run with the id range
+     * (low_id, high_id] it merged, the offset it applied and the newest change date it saw. Since each
+     * run maps a whole range with one offset, these rows are also the persisted old -> new id maps.
+     */
+    private static final class Watermarks {
+        private static final String TABLE = "merge_watermark";
+
+        static Map<String, List<Segment>> load(Connection dst) throws SQLException {
+            try (Statement st = dst.createStatement()) {
+                st.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " (" +
+                        " source_schema varchar(64) NOT NULL," +
+                        " table_name varchar(64) NOT NULL," +
+                        " low_id bigint NOT NULL," +
+                        " high_id bigint NOT NULL," +
+                        " id_offset bigint NOT NULL," +
+                        " max_change datetime DEFAULT NULL," +
+                        " merged_at timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP," +
+                        " PRIMARY KEY (source_schema, table_name, high_id))");
+            }
+            Map<String, List<Segment>> out = new HashMap<>();
+            String sql = "SELECT source_schema, table_name, high_id, id_offset, max_change FROM " + TABLE +
+                         " ORDER BY source_schema, table_name, high_id";
+            try (Statement st = dst.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+                while (rs.next()) {
+                    out.computeIfAbsent(node(rs.getString(1), rs.getString(2)), k -> new ArrayList<>())
+                       .add(new Segment(rs.getLong(3), rs.getLong(4), rs.getTimestamp(5)));
+                }
+            }
+            return out;
+        }
+
+        /** Records this run's ranges; runs inside the final DEST transaction. */
+        static void save(Connection dst, OffsetPlan plan) throws SQLException {
+            String sql = "INSERT INTO " + TABLE + " (source_schema, table_name, low_id, high_id, id_offset, max_change)" +
+                         " VALUES (?, ?, ?, ?, ?, ?)" +
+                         " ON DUPLICATE KEY UPDATE max_change = GREATEST(COALESCE(max_change, VALUES(max_change)), VALUES(max_change))";
+            try (PreparedStatement ps = dst.prepareStatement(sql)) {
+                for (IdRemap r : plan.all()) {
+                    if (r.high == 0 && r.maxChange == null) continue; // empty table, nothing merged
+                    ps.setString(1, r.schema);
+                    ps.setString(2, r.table);
+                    ps.setLong(3, r.watermark);
+                    ps.setLong(4, r.high);
+                    ps.setLong(5, r.offset);
+                    ps.setTimestamp(6, r.maxChange);
+                    ps.addBatch();
                 }
+                ps.executeBatch();
             }
         }
-        idMaps.put(table, idMap);
     }
 
-    private static void insertSequencingResult(Connection dst, String srcSchema, Set<Long> reactionIds, Set<Long> assemblyIds,
-                                               boolean reindex, Map<String, Map<Long, Long>> idMaps) throws SQLException {
-        if ((reactionIds == null || reactionIds.isEmpty()) && (assemblyIds == null || assemblyIds.isEmpty())) return;
-        try (Connection src = openSrc(srcSchema)) {
-            StringBuilder sb = new StringBuilder("SELECT reaction, assembly FROM sequencing_result WHERE 1=1");
-            List<Object> params = new ArrayList<>();
-            if (reactionIds != null && !reactionIds.isEmpty()) {
-                sb.append(" AND reaction IN (").append(placeholders(reactionIds.size())).append(")");
-                params.addAll(reactionIds);
-            }
-            if (assemblyIds != null && !assemblyIds.isEmpty()) {
-                sb.append(" AND assembly IN (").append(placeholders(assemblyIds.size())).append(")");
-                params.addAll(assemblyIds);
-            }
-            try (PreparedStatement ps = src.prepareStatement(sb.toString())) {
-                bind(ps, params);
-                try (ResultSet rs = ps.executeQuery()) {
-                    String sql = "INSERT INTO sequencing_result (reaction, assembly) VALUES (?, ?)";
-                    try (PreparedStatement ins = dst.prepareStatement(sql)) {
-                        int batch = 0;
-                        while (rs.next()) {
-                            long r = rs.getLong("reaction");
-                            long a = rs.getLong("assembly");
-                            Long newR = mapId(idMaps, "cyclesequencing", r, reindex, dst);
-                            Long newA = mapId(idMaps, "assembly", a, reindex, dst);
-                            ins.setLong(1, newR);
-                            ins.setLong(2, newA);
-                            ins.addBatch();
-                            if (++batch % 1000 == 0) ins.executeBatch();
-                        }
-                        ins.executeBatch();
+    // ---------- Checkpoints ----------
+    /**
+     * Commit granularity plus a resume journal kept in DEST. For every table of the run the journal
+     * holds the frozen offset and snapshot bound, the last source id committed and whether the table is
+     * done; the selected plates are journaled too. Journal updates share the transaction of the rows
+     * they describe, so after a failure the next run reuses the same plan, skips finished tables and
+     * continues the others after their last committed id. A clean finish empties the journal.
+     * With COMMIT_MODE=run on a single thread everything is one transaction and no journal is kept.
+     */
+    static final class Checkpoints {
+        private static final String TABLE  = "merge_checkpoint";
+        private static final String PLATES = "merge_checkpoint_plate";
+
+        static final class Frozen {
+            final long offset;
+            final long high;
+            volatile long lastId;
+            volatile boolean completed;
+
+            Frozen(long offset, long high, long lastId, boolean completed) {
+                this.offset = offset;
+                this.high = high;
+                this.lastId = lastId;
+                this.completed = completed;
+            }
+        }
+
+        private final boolean enabled;
+        private final boolean perBatch;
+        private final Map<String, Frozen> journal = new ConcurrentHashMap<>();
+        private final Map<String, List<Long>> plates = new HashMap<>();
+        private final Map<String, Integer> batches = new ConcurrentHashMap<>();
+
+        Checkpoints(boolean enabled, boolean perBatch) {
+            this.enabled = enabled;
+            this.perBatch = perBatch;
+        }
+
+        static Checkpoints open(Connection dst) throws SQLException {
+            String mode = COMMIT_MODE.toLowerCase(Locale.ROOT);
+            if (!Arrays.asList("run", "table", "batches").contains(mode)) {
+                throw new IllegalArgumentException("COMMIT_MODE must be run, table or batches, not " + COMMIT_MODE);
+            }
+            if (mode.equals("run") && MERGE_THREADS > 1) {
+                // Parallel tables commit on their own connections anyway; journal them so a failure can resume
+                System.out.println("COMMIT_MODE=run with MERGE_THREADS > 1: committing per table instead");
+                mode = "table";
+            }
+            if (mode.equals("batches") && MERGE_SHARDS > 0) {
+                // Shards of a schema copy the same tables, so a per-table last id cannot describe them
+                System.out.println("COMMIT_MODE=batches with MERGE_SHARDS: committing per shard instead");
+                mode = "table";
+            }
+            Checkpoints cp = new Checkpoints(!mode.equals("run"), mode.equals("batches"));
+            if (!cp.enabled) return cp;
+
+            try (Statement st = dst.createStatement()) {
+                st.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " (" +
+                        " source_schema varchar(64) NOT NULL," +
+                        " table_name varchar(64) NOT NULL," +
+                        " id_offset bigint NOT NULL DEFAULT 0," +
+                        " high_id bigint NOT NULL DEFAULT 0," +
+                        " last_id bigint NOT NULL DEFAULT 0," +
+                        " completed tinyint NOT NULL DEFAULT 0," +
+                        " updated_at timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP," +
+                        " PRIMARY KEY (source_schema, table_name))");
+                st.execute("CREATE TABLE IF NOT EXISTS " + PLATES + " (" +
+                        " source_schema varchar(64) NOT NULL," +
+                        " plate_id bigint NOT NULL," +
+                        " PRIMARY KEY (source_schema, plate_id))");
+                try (ResultSet rs = st.executeQuery(
+                        "SELECT source_schema, table_name, id_offset, high_id, last_id, completed FROM " + TABLE)) {
+                    while (rs.next()) {
+                        cp.journal.put(node(rs.getString(1), rs.getString(2)),
+                                new Frozen(rs.getLong(3), rs.getLong(4), rs.getLong(5), rs.getBoolean(6)));
                     }
                 }
+                try (ResultSet rs = st.executeQuery(
+                        "SELECT source_schema, plate_id FROM " + PLATES + " ORDER BY source_schema, plate_id")) {
+                    while (rs.next()) cp.plates.computeIfAbsent(rs.getString(1), k -> new ArrayList<>()).add(rs.getLong(2));
+                }
+            }
+            boolean sharded = cp.journal.keySet().stream().anyMatch(k -> k.contains(".shard "));
+            if (cp.resuming() && sharded != MERGE_SHARDS > 0) {
+                throw new IllegalStateException("Checkpoint was written " + (sharded ? "with" : "without") +
+                        " MERGE_SHARDS; resume with the setting the interrupted run used");
+            }
+            if (cp.resuming()) {
+                long done = cp.journal.values().stream().filter(f -> f.completed).count();
+                System.out.println("Resuming from checkpoint: " + done + " of " + cp.journal.size() + " tables done");
+            }
+            return cp;
+        }
+
+        boolean resuming() {
+            return !journal.isEmpty();
+        }
+
+        /** Offset and snapshot bound a resumed run must keep, or null for a fresh run. */
+        Frozen frozen(String schema, String table) {
+            return journal.get(node(schema, table));
+        }
+
+        /** Plates a resumed run must keep, or null to select them afresh. */
+        List<Long> plates(String schema) {
+            return resuming() ? plates.getOrDefault(schema, Collections.emptyList()) : null;
+        }
+
+        /** Last source id a previous attempt committed for this table; 0 when starting from scratch. */
+        long lastId(String schema, String table) {
+            Frozen f = journal.get(node(schema, table));
+            return f == null ? 0L : f.lastId;
+        }
+
+        /**
+         * Journals the plan and plates of a fresh run and commits them before any row is copied. Either way
+         * it ends the read transaction of the planning queries, so DEST reads after it see rows other
+         * connections commit during the merge.
+         */
+        void begin(Connection dst, OffsetPlan plan, Workset... worksets) throws SQLException {
+            if (!enabled || resuming()) {
+                dst.commit();
+                return;
+            }
+            String sql = "INSERT INTO " + TABLE + " (source_schema, table_name, id_offset, high_id) VALUES (?, ?, ?, ?)";
+            try (PreparedStatement ps = dst.prepareStatement(sql)) {
+                for (IdRemap r : plan.all()) {
+                    add(ps, r.schema, r.table, r.offset, r.high);
+                    journal.put(node(r.schema, r.table), new Frozen(r.offset, r.high, 0L, false));
+                }
+                for (Workset ws : worksets) {
+                    add(ps, ws.schema, "sequencing_result", 0L, 0L);
+                    journal.put(node(ws.schema, "sequencing_result"), new Frozen(0L, 0L, 0L, false));
+                    for (int k = 0; k < ws.shards.size(); k++) {
+                        if (ws.shards.get(k).isEmpty()) continue;
+                        add(ps, ws.schema, shardTable(k), 0L, 0L);
+                        journal.put(node(ws.schema, shardTable(k)), new Frozen(0L, 0L, 0L, false));
+                    }
+                }
+                ps.executeBatch();
+            }
+            try (PreparedStatement ps = dst.prepareStatement(
+                    "INSERT INTO " + PLATES + " (source_schema, plate_id) VALUES (?, ?)")) {
+                for (Workset ws : worksets) {
+                    for (long id : ws.ids.get("plate")) {
+                        ps.setString(1, ws.schema);
+                        ps.setLong(2, id);
+                        ps.addBatch();
+                    }
+                }
+                ps.executeBatch();
+            }
+            dst.commit();
+        }
+
+        private static void add(PreparedStatement ps, String schema, String table, long offset, long high) throws SQLException {
+            ps.setString(1, schema);
+            ps.setString(2, table);
+            ps.setLong(3, offset);
+            ps.setLong(4, high);
+            ps.addBatch();
+        }
+
+        /** Wraps a table copy so finished tables are skipped and completion commits with the last rows. */
+        TableJob track(String schema, String table, TableJob job) {
+            if (!enabled) return job;
+            return dst -> {
+                Frozen f = journal.get(node(schema, table));
+                if (f != null && f.completed) {
+                    System.out.println("     " + node(schema, table) + " already done, skipped");
+                    return;
+                }
+                job.run(dst);
+                update(dst, schema, table, "completed = 1");
+                dst.commit();
+                if (f != null) f.completed = true;
+            };
+        }
+
+        /** Called after each executed insert batch; in "batches" mode commits every COMMIT_EVERY_BATCHES. */
+        void batchDone(Connection dst, IdRemap remap, long lastSrcId) throws SQLException {
+            if (!perBatch) return;
+            String key = node(remap.schema, remap.table);
+            if (batches.merge(key, 1, Integer::sum) % COMMIT_EVERY_BATCHES != 0) return;
+            update(dst, remap.schema, remap.table, "last_id = " + lastSrcId);
+            dst.commit();
+            Frozen f = journal.get(key);
+            if (f != null) f.lastId = lastSrcId;
+        }
+
+        /** Clears the journal inside the final transaction of a successful run. */
+        void finish(Connection dst) throws SQLException {
+            if (!enabled) return;
+            try (Statement st = dst.createStatement()) {
+                st.executeUpdate("DELETE FROM " + TABLE);
+                st.executeUpdate("DELETE FROM " + PLATES);
             }
         }
-    }
 
-    private static Long mapId(Map<String, Map<Long, Long>> idMaps, String table, long oldId,
-                              boolean reindex, Connection dst) throws SQLException {
-        Map<Long, Long> m = idMaps.get(table);
-        if (m != null && m.containsKey(oldId)) return m.get(oldId);
-        if (reindex) {
-            String pk = TABLE_PK.get(table);
-            long off = currentMaxId(dst, table, pk);
-            return oldId + off;
+        private static void update(Connection dst, String schema, String table, String set) throws SQLException {
+            String sql = "UPDATE " + TABLE + " SET " + set + " WHERE source_schema = ? AND table_name = ?";
+            try (PreparedStatement ps = dst.prepareStatement(sql)) {
+                ps.setString(1, schema);
+                ps.setString(2, table);
+                ps.executeUpdate();
+            }
         }
-        return oldId;
     }
 
-    private static void insertResultSet(Connection dst, String table, ResultSet rs, boolean reindex, String pk,
-                                        Map<Long, Long> idMap, long offset,
-                                        Map<String, Map<Long, Long>> idMaps) throws SQLException {
-        ResultSetMetaData md = rs.getMetaData();
-        int cols = md.getColumnCount();
+    private static String resumePredicate(String pk, long resumeAfter) {
+        return resumeAfter > 0 ? " AND `" + pk + "` > ?" : "";
+    }
 
-        String columnList = columnsList(md);
-        String ph = String.join(", ", Collections.nCopies(cols, "?"));
-        String sql = "INSERT INTO " + table + " (" + columnList + ") VALUES (" + ph + ")";
+    private static int bindResume(PreparedStatement ps, int from, long resumeAfter) throws SQLException {
+        if (resumeAfter <= 0) return from;
+        ps.setLong(from, resumeAfter);
+        return from + 1;
+    }
 
-        try (PreparedStatement ins = dst.prepareStatement(sql)) {
-            int batch = 0;
-            while (rs.next()) {
-                Map<String, Object> row = new LinkedHashMap<>();
-                for (int i = 1; i <= cols; i++) {
-                    String col = md.getColumnLabel(i);
-                    row.put(col, rs.getObject(i));
-                }
-
-                // PK remap
-                if (row.get(pk) != null) {
-                    long oldId = ((Number) row.get(pk)).longValue();
-                    long newId = reindex ? oldId + offset : oldId;
-                    row.put(pk, newId);
-                    idMap.put(oldId, newId);
-                }
-
-                // FK remap
-                Map<String, String> fks = FK_MAP.getOrDefault(table, Collections.emptyMap());
-                for (Map.Entry<String, String> e : fks.entrySet()) {
-                    String fkCol = e.getKey();
-                    String refTable = e.getValue();
-                    Object v = row.get(fkCol);
-                    if (v != null) {
-                        long oldFk = ((Number) v).longValue();
-                        Map<Long, Long> refMap = idMaps.get(refTable);
-                        long newFk = oldFk;
-                        if (refMap != null && refMap.containsKey(oldFk)) {
-                            newFk = refMap.get(oldFk);
-                        } else if (reindex) {
-                            String refPk = TABLE_PK.get(refTable);
-                            long refOffset = currentMaxId(dst, refTable, refPk);
-                            newFk = oldFk + refOffset;
+    // ---------- Unique values ----------
+    /**
+     * DEST's existing values of every unique string column in the catalog, loaded once up front and kept current as
+     * LIMS rows are inserted, so LABBENCH collisions are resolved without querying DEST. Values are
+     * keyed case- and accent-insensitively to approximate the schema's utf8mb4_0900_ai_ci collation.
+     */
+    static final class UniqueIndex {
+        private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+        private final Map<String, Set<String>> taken = new HashMap<>();
+        private final List<String[]> renames = new ArrayList<>();
+        // table.col -> LABBENCH id -> settled new value, for columns settled up front (renamed rows only)
+        private final Map<String, Map<Long, String>> settled = new HashMap<>();
+
+        static UniqueIndex load(Connection dst, SchemaCatalog catalog) throws SQLException {
+            UniqueIndex idx = new UniqueIndex();
+            for (TablePlan t : catalog.copied()) {
+                for (String col : t.uniqueColumns()) {
+                    Set<String> keys = new HashSet<>();
+                    String sql = "SELECT `" + col + "` FROM " + t.table + " WHERE `" + col + "` IS NOT NULL";
+                    try (Statement st = dst.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                        st.setFetchSize(Integer.MIN_VALUE); // row-by-row streaming
+                        try (ResultSet rs = st.executeQuery(sql)) {
+                            while (rs.next()) keys.add(key(rs.getString(1)));
                         }
-                        row.put(fkCol, newFk);
-                    }
-                }
-
-                // Unique string conflicts (LABBENCH only)
-                if (reindex) {
-                    List<String> uniq = UNIQUE_STR_COLS.getOrDefault(table, Collections.emptyList());
-                    for (String ucol : uniq) {
-                        Object v = row.get(ucol);
-                        if (v != null) {
-                            String s = v.toString();
-                            if (existsValue(dst, table, ucol, s)) {
-                                String s2 = s + "_lb";
-                                int cnt = 1;
-                                while (existsValue(dst, table, ucol, s2)) s2 = s + "_lb" + cnt++;
-                                row.put(ucol, s2);
+                    }
+                    idx.taken.put(t.table + "." + col, keys);
+                    System.out.println("  Unique index " + t.table + "." + col + ": " + keys.size() + " values in DEST");
+                }
+            }
+            return idx;
+        }
+
+        /** Records a value inserted unchanged (LIMS). */
+        synchronized void record(String table, String col, String value) {
+            taken(table, col).add(key(value));
+        }
+
+        /** Returns {@code value}, or the first free {@code value_lb}, {@code value_lb1}, ... and records it. */
+        synchronized String claim(String table, String col, String value, long srcId) {
+            Map<Long, String> done = settled.get(table + "." + col);
+            if (done != null) return done.getOrDefault(srcId, value);
+            Set<String> keys = taken(table, col);
+            String out = value;
+            if (keys.contains(key(out))) {
+                out = value + "_lb";
+                int cnt = 1;
+                while (keys.contains(key(out))) out = value + "_lb" + cnt++;
+                renames.add(new String[] { table, col, Long.toString(srcId), value, out });
+            }
+            keys.add(key(out));
+            return out;
+        }
+
+        /**
+         * Claims the unique values of the sharded tables' LABBENCH rows before any shard runs, exactly as a
+         * table-at-a-time run would: every LIMS value of the worksets first, then LABBENCH values in id order.
+         * Shards then only look their rows up in {@link #claim}, so no rename depends on which shard got
+         * there first. Shards a resumed run skips are left out; their rows and values are in DEST already.
+         */
+        void settle(SchemaCatalog catalog, OffsetPlan plan, Checkpoints checkpoints, Workset lims, Workset labbench)
+                throws SQLException {
+            for (String table : SUBSET_TABLES) {
+                TablePlan t = catalog.table(table);
+                if (SHARED_TABLES.contains(table) || t.pk == null || t.uniqueColumns().isEmpty()) continue;
+                IdRemap limsRemap = plan.forTable(table, false);
+                IdRemap remap = plan.forTable(table, true);
+                // Only rows this run reads count (see deltaPredicate), and only new LABBENCH rows claim (see RowMapper.unique)
+                scan(lims, t, checkpoints, (id, col, v) -> {
+                    if (!INCREMENTAL || id <= limsRemap.high) record(table, col, v);
+                });
+                Map<String, Map<Long, String>> renamed = new HashMap<>();
+                scan(labbench, t, checkpoints, (id, col, v) -> {
+                    if (remap.merged(id) || INCREMENTAL && id > remap.high) return;
+                    String out = claim(table, col, v, id);
+                    if (!out.equals(v)) renamed.computeIfAbsent(col, k -> new HashMap<>()).put(id, out);
+                });
+                int n = 0;
+                synchronized (this) {
+                    for (String col : t.uniqueColumns()) {
+                        Map<Long, String> m = renamed.getOrDefault(col, Collections.emptyMap());
+                        settled.put(table + "." + col, m);
+                        n += m.size();
+                    }
+                }
+                System.out.println("  Unique values of " + table + " settled: " + n + " LABBENCH rename(s)");
+            }
+        }
+
+        @FunctionalInterface
+        private interface UniqueValue {
+            void accept(long id, String col, String value);
+        }
+
+        /** Unique values of the workset rows of {@code t} in the shards still to run, in id order. */
+        private static void scan(Workset ws, TablePlan t, Checkpoints checkpoints, UniqueValue out) throws SQLException {
+            Set<Long> ids = new HashSet<>();
+            for (int k = 0; k < ws.shards.size(); k++) {
+                Checkpoints.Frozen f = checkpoints.frozen(ws.schema, shardTable(k));
+                if (f != null && f.completed) continue;
+                ids.addAll(ws.shards.get(k).ids.getOrDefault(t.table, Collections.emptySet()));
+            }
+            List<String> cols = t.uniqueColumns();
+            StringJoiner list = new StringJoiner(", ");
+            for (String col : cols) list.add("`" + col + "`");
+            try (Connection src = openSrc(ws.schema)) {
+                for (KeyChunk chunk : KeyChunk.split(ids)) {
+                    String sql = "SELECT `" + t.pk + "`, " + list + " FROM " + t.table + " WHERE " +
+                                 chunk.predicate(t.pk) + " ORDER BY `" + t.pk + "`";
+                    try (PreparedStatement ps = prepareStreaming(src, sql)) {
+                        chunk.bind(ps, 1);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                for (int i = 0; i < cols.size(); i++) {
+                                    String v = rs.getString(i + 2);
+                                    if (v != null) out.accept(rs.getLong(1), cols.get(i), v);
+                                }
                             }
                         }
                     }
                 }
+            }
+        }
 
-                for (int i = 1; i <= cols; i++) {
-                    ins.setObject(i, row.get(md.getColumnLabel(i)));
+        synchronized void writeReport(Path file) throws IOException {
+            try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                w.write("table,column,labbench_id,old_value,new_value\n");
+                for (String[] r : renames) {
+                    StringJoiner line = new StringJoiner(",");
+                    for (String f : r) line.add(csv(f));
+                    w.write(line + "\n");
                 }
-                ins.addBatch();
-                if (++batch % 1000 == 0) ins.executeBatch();
             }
-            ins.executeBatch();
+            System.out.println("Renamed " + renames.size() + " LABBENCH unique value(s); report: " + file.toAbsolutePath());
+        }
+
+        private Set<String> taken(String table, String col) {
+            Set<String> keys = taken.get(table + "." + col);
+            if (keys == null) throw new IllegalArgumentException("No unique index for " + table + "." + col);
+            return keys;
+        }
+
+        static String key(String value) {
+            String folded = MARKS.matcher(Normalizer.normalize(value, Normalizer.Form.NFD)).replaceAll("");
+            return folded.toLowerCase(Locale.ROOT);
         }
     }
 
-    private static boolean existsValue(Connection conn, String table, String col, String val) throws SQLException {
-        String sql = "SELECT 1 FROM " + table + " WHERE " + col + " = ? LIMIT 1";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, val);
-            try (ResultSet rs = ps.executeQuery()) {
-                return rs.next();
+    // ---------- Blob dedup ----------
+    /**
+     * Content-addressed index of the blobs DEST holds, for BLOB_DEDUP. Binary LOBs are hashed as they
+     * are read; when the hash is known, the row goes out with an empty placeholder and, right after its
+     * batch executes, one UPDATE copies the bytes on the server from the DEST row that has them. The
+     * UPDATE re-checks SHA2 there and, if that row no longer matches, the bytes are sent after all.
+     *
+     * Locations sit in an access-ordered LRU of BLOB_CACHE_ENTRIES; evicted ones spill to one small
+     * file each under BLOB_CACHE_DIR when set. Blobs that are sent are also recorded in DEST's
+     * merge_blob_index, in the transaction that inserts them, and the index is read back at start, so
+     * incremental and resumed runs skip blobs earlier runs shipped. With MERGE_THREADS above 1 other
+     * copies' rows stay invisible until they commit, so a copy only reuses its own and indexed blobs.
+     */
+    private static final class BlobCache {
+        private static final String TABLE = "merge_blob_index";
+        static final byte[] PLACEHOLDER = new byte[0];
+
+        /** A DEST row holding a blob; {@code owner} is the copy that wrote it, null once visible to all. */
+        static final class Location {
+            final String table;
+            final String column;
+            final String pkColumn;
+            final long rowId;
+            final Object owner;
+
+            Location(String table, String column, String pkColumn, long rowId, Object owner) {
+                this.table = table;
+                this.column = column;
+                this.pkColumn = pkColumn;
+                this.rowId = rowId;
+                this.owner = owner;
             }
         }
-    }
 
-    private static long currentMaxId(Connection conn, String table, String pk) throws SQLException {
-        String sql = "SELECT COALESCE(MAX(" + pk + "), 0) FROM " + table;
-        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(sql)) {
-            rs.next();
-            return rs.getLong(1);
+        /** A blob in a pending batch: a hit to copy from {@code source} (bytes kept in case that fails) or a miss. */
+        static final class Ref {
+            final String hash;
+            final int column;
+            final long rowId;
+            final Location source;
+            final byte[] bytes;
+
+            Ref(String hash, int column, long rowId, Location source, byte[] bytes) {
+                this.hash = hash;
+                this.column = column;
+                this.rowId = rowId;
+                this.source = source;
+                this.bytes = bytes;
+            }
         }
-    }
 
-    // ---------- Utils ----------
-    private static String placeholders(int n) {
-        if (n <= 0) return "";
-        return String.join(", ", Collections.nCopies(n, "?"));
-    }
+        private final Path dir;
+        private final Map<String, Location> lru;
+        final LongAdder blobs      = new LongAdder();
+        final LongAdder duplicates = new LongAdder();
+        final LongAdder dupBytes   = new LongAdder();
+        final LongAdder fallbacks  = new LongAdder();
+
+        private BlobCache(Path dir) {
+            this.dir = dir;
+            this.lru = new LinkedHashMap<String, Location>(1024, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Location> eldest) {
+                    if (size() <= BLOB_CACHE_ENTRIES) return false;
+                    // Rows other copies cannot see yet must not outlive this run
+                    if (eldest.getValue().owner == null) spill(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+            };
+        }
 
-    private static void bind(PreparedStatement ps, List<?> params) throws SQLException {
-        for (int i = 0; i < params.size(); i++) ps.setObject(i + 1, params.get(i));
-    }
+        static BlobCache load(Connection dst) throws SQLException {
+            BlobCache cache = new BlobCache(BLOB_CACHE_DIR.isEmpty() ? null : Paths.get(BLOB_CACHE_DIR));
+            try (Statement st = dst.createStatement()) {
+                st.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " (" +
+                        " sha256 char(64) NOT NULL," +
+                        " table_name varchar(64) NOT NULL," +
+                        " column_name varchar(64) NOT NULL," +
+                        " pk_column varchar(64) NOT NULL," +
+                        " row_id bigint NOT NULL," +
+                        // One entry per row, not per hash: parallel copies never write the same index row
+                        " PRIMARY KEY (sha256, table_name, column_name, row_id))");
+            }
+            try (Statement st = dst.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                st.setFetchSize(Integer.MIN_VALUE); // row-by-row streaming
+                try (ResultSet rs = st.executeQuery(
+                        "SELECT sha256, table_name, column_name, pk_column, row_id FROM " + TABLE)) {
+                    while (rs.next()) {
+                        cache.lru.put(rs.getString(1), new Location(rs.getString(2), rs.getString(3),
+                                rs.getString(4), rs.getLong(5), null));
+                    }
+                }
+            }
+            System.out.println("  Blob index: " + cache.lru.size() + " distinct blob(s) known in DEST" +
+                    (cache.dir == null ? "" : ", overflow in " + cache.dir.toAbsolutePath()));
+            return cache;
+        }
 
-    private static String columnsList(ResultSetMetaData md) throws SQLException {
-        List<String> cols = new ArrayList<>();
-        for (int i = 1; i <= md.getColumnCount(); i++) cols.add("`" + md.getColumnLabel(i) + "`");
-        return String.join(", ", cols);
-    }
+        /** Where DEST holds {@code hash}, if {@code copy} can see it. */
+        synchronized Location find(String hash, Object copy) {
+            Location loc = lru.get(hash);
+            if (loc == null && (loc = unspill(hash)) != null) lru.put(hash, loc);
+            if (loc == null || (loc.owner != null && loc.owner != copy)) return null;
+            return loc;
+        }
 
-    @SafeVarargs
-    private static <K, V> Map<K, V> mapOf(Object... kv) {
-        if (kv.length % 2 != 0) throw new IllegalArgumentException("Odd kv length");
-        Map<K, V> m = new LinkedHashMap<>();
-        for (int i = 0; i < kv.length; i += 2) {
-            @SuppressWarnings("unchecked") K k = (K) kv[i];
-            @SuppressWarnings("unchecked") V v = (V) kv[i + 1];
-            m.put(k, v);
-        }
-        return m;
+        synchronized void put(String hash, Location loc) {
+            lru.put(hash, loc);
+        }
+
+        synchronized void forget(String hash) {
+            lru.remove(hash);
+            if (dir != null) {
+                try {
+                    Files.deleteIfExists(spillFile(hash));
+                } catch (IOException ignore) {
+                    // a stale entry is re-checked by SHA2 anyway
+                }
+            }
+        }
+
+        /**
+         * Completes the blobs of a batch that has just executed on {@code dst}: hits are copied from their
+         * source rows (or sent when the source changed), and every blob sent is added to merge_blob_index.
+         */
+        void afterBatch(Connection dst, TablePlan t, List<Ref> refs, Object copy) throws SQLException {
+            if (refs.isEmpty()) return;
+            // Assigning timestamps to themselves keeps ON UPDATE CURRENT_TIMESTAMP columns as copied
+            StringBuilder keep = new StringBuilder();
+            for (int i = 0; i < t.columns.length; i++) {
+                if (t.types[i] == Types.TIMESTAMP) keep.append(", d.`").append(t.columns[i]).append("` = d.`").append(t.columns[i]).append('`');
+            }
+            List<Ref> sent = new ArrayList<>();
+            Map<String, PreparedStatement> copies = new HashMap<>();
+            try {
+                for (Ref r : refs) {
+                    if (r.source == null) {
+                        sent.add(r);
+                        continue;
+                    }
+                    Location s = r.source;
+                    String col = t.columns[r.column];
+                    String sql = "UPDATE `" + t.table + "` d JOIN `" + s.table + "` s ON s.`" + s.pkColumn + "` = ?" +
+                                 " SET d.`" + col + "` = s.`" + s.column + "`" + keep +
+                                 " WHERE d.`" + t.pk + "` = ? AND SHA2(s.`" + s.column + "`, 256) = ?";
+                    PreparedStatement ps = copies.get(sql);
+                    if (ps == null) copies.put(sql, ps = dst.prepareStatement(sql));
+                    ps.setLong(1, s.rowId);
+                    ps.setLong(2, r.rowId);
+                    ps.setString(3, r.hash);
+                    if (ps.executeUpdate() > 0) continue;
+
+                    // The source row was deleted or rewritten since it was indexed
+                    forget(r.hash);
+                    fallbacks.increment();
+                    sql = "UPDATE `" + t.table + "` d SET d.`" + col + "` = ?" + keep + " WHERE d.`" + t.pk + "` = ?";
+                    if ((ps = copies.get(sql)) == null) copies.put(sql, ps = dst.prepareStatement(sql));
+                    ps.setBytes(1, r.bytes);
+                    ps.setLong(2, r.rowId);
+                    ps.executeUpdate();
+                    put(r.hash, new Location(t.table, col, t.pk, r.rowId, copy));
+                    sent.add(r);
+                }
+            } finally {
+                for (PreparedStatement ps : copies.values()) ps.close();
+            }
+            if (sent.isEmpty()) return;
+            try (PreparedStatement ps = dst.prepareStatement("INSERT IGNORE INTO " + TABLE +
+                    " (sha256, table_name, column_name, pk_column, row_id) VALUES (?, ?, ?, ?, ?)")) {
+                for (Ref r : sent) {
+                    ps.setString(1, r.hash);
+                    ps.setString(2, t.table);
+                    ps.setString(3, t.columns[r.column]);
+                    ps.setString(4, t.pk);
+                    ps.setLong(5, r.rowId);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+
+        void report() {
+            System.out.println(String.format("Blob dedup: %d of %d blob(s) copied on DEST instead of sent " +
+                    "(%.1f MB not transferred), %d re-sent after their source row changed",
+                    duplicates.sum(), blobs.sum(), dupBytes.sum() / 1e6, fallbacks.sum()));
+        }
+
+        private Path spillFile(String hash) {
+            return dir.resolve(hash.substring(0, 2)).resolve(hash);
+        }
+
+        // The disk tier is a cache: failures only cost a re-send, so they are not reported
+        private void spill(String hash, Location loc) {
+            if (dir == null) return;
+            try {
+                Path f = spillFile(hash);
+                Files.createDirectories(f.getParent());
+                Files.write(f, (loc.table + "\t" + loc.column + "\t" + loc.pkColumn + "\t" + loc.rowId)
+                        .getBytes(StandardCharsets.UTF_8));
+            } catch (IOException ignore) {
+                // dropped from the cache instead
+            }
+        }
+
+        private Location unspill(String hash) {
+            if (dir == null) return null;
+            try {
+                Path f = spillFile(hash);
+                if (!Files.exists(f)) return null;
+                String[] p = new String(Files.readAllBytes(f), StandardCharsets.UTF_8).split("\t");
+                return new Location(p[0], p[1], p[2], Long.parseLong(p[3]), null);
+            } catch (IOException | RuntimeException e) {
+                return null;
+            }
+        }
+
+        static String sha256(MessageDigest sha, byte[] bytes) {
+            byte[] d = sha.digest(bytes);
+            StringBuilder sb = new StringBuilder(d.length * 2);
+            for (byte b : d) sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            return sb.toString();
+        }
+    }
+
+    // ---------- Context ----------
+    /** Run-wide state shared by every table copy. */
+    static final class MergeContext {
+        final SchemaCatalog catalog;
+        final OffsetPlan plan;
+        final UniqueIndex unique;
+        final Checkpoints checkpoints;
+        final Metrics metrics;
+        final BlobCache blobs; // null unless BLOB_DEDUP
+        final SequencingLinks links = new SequencingLinks();
+
+        MergeContext(SchemaCatalog catalog, OffsetPlan plan, UniqueIndex unique, Checkpoints checkpoints,
+                     Metrics metrics, BlobCache blobs) {
+            this.catalog = catalog;
+            this.plan = plan;
+            this.unique = unique;
+            this.checkpoints = checkpoints;
+            this.metrics = metrics;
+            this.blobs = blobs;
+        }
+    }
+
+    // ---------- Metrics ----------
+    /**
+     * Run-wide instrumentation: wall time per phase and, per table copy ("schema.table"), rows read
+     * and written, LOB bytes (text counted in chars), batches, renamed unique values, orphaned links,
+     * deduplicated blobs and the time spent fetching from the source, remapping rows and executing on
+     * DEST. The report is CSV when METRICS_REPORT ends in .csv and JSON otherwise; PROGRESS_INTERVAL_SEC > 0
+     * also prints throughput and an ETA for the plate-scoped tables while the merge runs.
+     */
+    static final class Metrics {
+        static final class TableStats {
+            final String node;
+            volatile long expected; // workset ids, 0 for global tables
+            final LongAdder rowsRead     = new LongAdder();
+            final LongAdder rowsWritten  = new LongAdder();
+            final LongAdder lobBytes     = new LongAdder();
+            final LongAdder batches      = new LongAdder();
+            final LongAdder renames      = new LongAdder();
+            final LongAdder orphans      = new LongAdder();
+            final LongAdder dedupBlobs   = new LongAdder();
+            final LongAdder dedupBytes   = new LongAdder();
+            final LongAdder fetchNanos   = new LongAdder();
+            final LongAdder remapNanos   = new LongAdder();
+            final LongAdder executeNanos = new LongAdder();
+
+            TableStats(String node) {
+                this.node = node;
+            }
+
+            /** One batch or bulk statement of {@code rows} rows that started at {@code startNanos}. */
+            void executed(long rows, long startNanos) {
+                executeNanos.add(System.nanoTime() - startNanos);
+                rowsWritten.add(rows);
+                batches.increment();
+            }
+
+            InputStream counting(InputStream in) {
+                return new FilterInputStream(in) {
+                    @Override public int read() throws IOException {
+                        int b = super.read();
+                        if (b >= 0) lobBytes.increment();
+                        return b;
+                    }
+                    @Override public int read(byte[] b, int off, int len) throws IOException {
+                        int n = super.read(b, off, len);
+                        if (n > 0) lobBytes.add(n);
+                        return n;
+                    }
+                };
+            }
+
+            Reader counting(Reader in) {
+                return new FilterReader(in) {
+                    @Override public int read() throws IOException {
+                        int c = super.read();
+                        if (c >= 0) lobBytes.increment();
+                        return c;
+                    }
+                    @Override public int read(char[] cbuf, int off, int len) throws IOException {
+                        int n = super.read(cbuf, off, len);
+                        if (n > 0) lobBytes.add(n);
+                        return n;
+                    }
+                };
+            }
+        }
+
+        private final long start = System.nanoTime();
+        private final Map<String, TableStats> tables = new LinkedHashMap<>();
+        private final Map<String, Long> phases = new LinkedHashMap<>();
+        private ScheduledExecutorService progress;
+        private long lastTick, lastRows, lastBytes;
+
+        synchronized TableStats table(String schema, String table) {
+            return tables.computeIfAbsent(node(schema, table), TableStats::new);
+        }
+
+        synchronized void phase(String name, long startNanos) {
+            long ms = (System.nanoTime() - startNanos) / 1_000_000;
+            phases.merge(name, ms, Long::sum);
+            System.out.println("  [" + name + ": " + ms + " ms]");
+        }
+
+        void expect(Workset ws) {
+            ws.ids.forEach((table, ids) -> table(ws.schema, table).expected = ids.size());
+        }
+
+        void startProgress(int seconds) {
+            if (seconds <= 0) return;
+            lastTick = System.nanoTime();
+            progress = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread th = new Thread(r, "merge-progress");
+                th.setDaemon(true);
+                return th;
+            });
+            progress.scheduleAtFixedRate(this::tick, seconds, seconds, TimeUnit.SECONDS);
+        }
+
+        void stopProgress() {
+            if (progress != null) progress.shutdownNow();
+        }
+
+        private synchronized void tick() {
+            long now = System.nanoTime();
+            long rows = 0, bytes = 0, expected = 0, left = 0;
+            for (TableStats t : tables.values()) {
+                long read = t.rowsRead.sum();
+                rows += t.rowsWritten.sum();
+                bytes += t.lobBytes.sum();
+                expected += t.expected;
+                left += Math.max(0, t.expected - read);
+            }
+            double secs = Math.max(1e-3, (now - lastTick) / 1e9);
+            double rowRate = (rows - lastRows) / secs;
+            double mbRate = (bytes - lastBytes) / secs / (1 << 20);
+            String eta = expected == 0 ? "" : rowRate <= 0 ? ", ETA unknown"
+                    : String.format(", plate tables %d%%, ETA %s", 100 * (expected - left) / expected,
+                                    clock((long) (left / rowRate)));
+            System.out.println(String.format("  progress %s: %d rows (%.0f rows/s), LOB %.1f MB (%.2f MB/s)%s",
+                    clock((now - start) / 1_000_000_000L), rows, rowRate, bytes / (double) (1 << 20), mbRate, eta));
+            lastTick = now;
+            lastRows = rows;
+            lastBytes = bytes;
+        }
+
+        private static String clock(long secs) {
+            return String.format("%02d:%02d:%02d", secs / 3600, secs / 60 % 60, secs % 60);
+        }
+
+        synchronized void write(Path file, boolean completed) throws IOException {
+            long totalMs = (System.nanoTime() - start) / 1_000_000;
+            try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                if (file.toString().endsWith(".csv")) {
+                    w.write("kind,name,ms,rows_read,rows_written,lob_bytes,batches,renames,orphans,dedup_blobs,dedup_bytes," +
+                            "fetch_ms,remap_ms,execute_ms\n");
+                    w.write("run,total," + totalMs + ",,,,,,,,,,,\n");
+                    for (Map.Entry<String, Long> e : phases.entrySet()) {
+                        w.write("phase," + csv(e.getKey()) + "," + e.getValue() + ",,,,,,,,,,,\n");
+                    }
+                    for (TableStats t : tables.values()) {
+                        w.write("table," + csv(t.node) + ",," + t.rowsRead.sum() + "," + t.rowsWritten.sum() + "," +
+                                t.lobBytes.sum() + "," + t.batches.sum() + "," + t.renames.sum() + "," +
+                                t.orphans.sum() + "," + t.dedupBlobs.sum() + "," + t.dedupBytes.sum() + "," +
+                                t.fetchNanos.sum() / 1_000_000 + "," + t.remapNanos.sum() / 1_000_000 + "," +
+                                t.executeNanos.sum() / 1_000_000 + "\n");
+                    }
+                } else {
+                    w.write("{\n  \"completed\": " + completed + ",\n  \"total_ms\": " + totalMs + ",\n  \"phases\": {");
+                    StringJoiner ph = new StringJoiner(",");
+                    phases.forEach((name, ms) -> ph.add("\n    \"" + name + "\": " + ms));
+                    w.write(ph + "\n  },\n  \"tables\": [");
+                    StringJoiner tb = new StringJoiner(",");
+                    for (TableStats t : tables.values()) {
+                        tb.add("\n    {\"table\": \"" + t.node + "\", \"rows_read\": " + t.rowsRead.sum() +
+                               ", \"rows_written\": " + t.rowsWritten.sum() + ", \"lob_bytes\": " + t.lobBytes.sum() +
+                               ", \"batches\": " + t.batches.sum() + ", \"renames\": " + t.renames.sum() +
+                               ", \"orphans\": " + t.orphans.sum() +
+                               ", \"dedup_blobs\": " + t.dedupBlobs.sum() + ", \"dedup_bytes\": " + t.dedupBytes.sum() +
+                               ", \"fetch_ms\": " + t.fetchNanos.sum() / 1_000_000 +
+                               ", \"remap_ms\": " + t.remapNanos.sum() / 1_000_000 +
+                               ", \"execute_ms\": " + t.executeNanos.sum() / 1_000_000 + "}");
+                    }
+                    w.write(tb + "\n  ]\n}\n");
+                }
+            }
+            System.out.println("Metrics report: " + file.toAbsolutePath());
+        }
+    }
+
+    // ---------- Key chunks ----------
+    /**
+     * A bounded slice of a sorted ID set: either a contiguous run fetched with {@code BETWEEN}, or a
+     * list of scattered IDs fetched with {@code IN}. {@link #split} returns chunks in ascending key
+     * order, never more than KEY_CHUNK_SIZE keys each, so no statement hits the placeholder limit.
+     */
+    static final class KeyChunk {
+        // Runs shorter than this are cheaper as IN members than as their own BETWEEN statement
+        private static final int MIN_RANGE_RUN = 16;
+
+        final long lo;
+        final long hi;
+        final long[] ids; // null for a BETWEEN range
+
+        private KeyChunk(long lo, long hi, long[] ids) {
+            this.lo = lo;
+            this.hi = hi;
+            this.ids = ids;
+        }
+
+        static List<KeyChunk> split(Collection<Long> keys) {
+            List<KeyChunk> out = new ArrayList<>();
+            if (keys == null || keys.isEmpty()) return out;
+            long[] sorted = keys.stream().mapToLong(Long::longValue).sorted().distinct().toArray();
+
+            long[] sparse = new long[KEY_CHUNK_SIZE];
+            int nSparse = 0;
+            int i = 0;
+            while (i < sorted.length) {
+                int j = i + 1;
+                while (j < sorted.length && sorted[j] == sorted[j - 1] + 1) j++;
+                if (j - i >= MIN_RANGE_RUN) {
+                    if (nSparse > 0) {
+                        out.add(list(sparse, nSparse));
+                        nSparse = 0;
+                    }
+                    for (int k = i; k < j; k += KEY_CHUNK_SIZE) {
+                        int end = Math.min(j, k + KEY_CHUNK_SIZE) - 1;
+                        out.add(new KeyChunk(sorted[k], sorted[end], null));
+                    }
+                } else {
+                    for (int k = i; k < j; k++) {
+                        sparse[nSparse++] = sorted[k];
+                        if (nSparse == KEY_CHUNK_SIZE) {
+                            out.add(list(sparse, nSparse));
+                            nSparse = 0;
+                        }
+                    }
+                }
+                i = j;
+            }
+            if (nSparse > 0) out.add(list(sparse, nSparse));
+            return out;
+        }
+
+        // Pads to a power-of-two length by repeating the last key, which keeps the number of distinct
+        // statement shapes (and thus parse/plan work on the server) small.
+        private static KeyChunk list(long[] buf, int n) {
+            int size = Math.min(KEY_CHUNK_SIZE, Math.max(8, Integer.highestOneBit(n - 1) << 1));
+            long[] ids = Arrays.copyOf(buf, Math.max(size, n));
+            Arrays.fill(ids, n, ids.length, buf[n - 1]);
+            return new KeyChunk(buf[0], buf[n - 1], ids);
+        }
+
+        /** The same keys plus {@code offset} (a BETWEEN range stays one). */
+        KeyChunk shift(long offset) {
+            if (ids == null) return new KeyChunk(lo + offset, hi + offset, null);
+            long[] shifted = new long[ids.length];
+            for (int i = 0; i < ids.length; i++) shifted[i] = ids[i] + offset;
+            return new KeyChunk(lo + offset, hi + offset, shifted);
+        }
+
+        String predicate(String col) {
+            if (ids == null) return "`" + col + "` BETWEEN ? AND ?";
+            return "`" + col + "` IN (" + placeholders(ids.length) + ")";
+        }
+
+        /** Binds this chunk's keys starting at parameter {@code from}; returns the next free index. */
+        int bind(PreparedStatement ps, int from) throws SQLException {
+            if (ids == null) {
+                ps.setLong(from, lo);
+                ps.setLong(from + 1, hi);
+                return from + 2;
+            }
+            for (long id : ids) ps.setLong(from++, id);
+            return from;
+        }
+    }
+
+    // ---------- Workset ----------
+    private static class Workset {
+        String schema;
+        Map<String, Set<Long>> ids = new LinkedHashMap<>();
+        Set<Long> pcrCocktailIds = new HashSet<>();
+        Set<Long> csCocktailIds  = new HashSet<>();
+        Set<Long> reactionIds    = new HashSet<>();
+        Set<Long> assemblyIds    = new HashSet<>();
+        List<Workset> shards     = new ArrayList<>(); // MERGE_SHARDS slices (some maybe empty); none unsharded
+
+        /** The schema-wide workset of a sharded run: every id set is the union of the shards' sets. */
+        static Workset union(String schema, List<Workset> shards) {
+            Workset ws = new Workset();
+            ws.schema = schema;
+            ws.shards.addAll(shards);
+            for (Workset shard : shards) {
+                shard.ids.forEach((table, ids) -> ws.ids.computeIfAbsent(table, k -> new LinkedHashSet<>()).addAll(ids));
+                ws.pcrCocktailIds.addAll(shard.pcrCocktailIds);
+                ws.csCocktailIds.addAll(shard.csCocktailIds);
+                ws.reactionIds.addAll(shard.reactionIds);
+                ws.assemblyIds.addAll(shard.assemblyIds);
+            }
+            return ws;
+        }
+
+        boolean isEmpty() {
+            Set<Long> plates = ids.get("plate");
+            return plates == null || plates.isEmpty();
+        }
+    }
+
+    /** MERGE_SHARDS contiguous slices of the plates in id order; plates beyond the shard count leave some empty. */
+    private static List<List<Long>> shardPlates(List<Long> plateIds) {
+        List<Long> sorted = new ArrayList<>(plateIds);
+        Collections.sort(sorted);
+        List<List<Long>> out = new ArrayList<>();
+        for (int k = 0; k < MERGE_SHARDS; k++) {
+            out.add(sorted.subList(k * sorted.size() / MERGE_SHARDS, (k + 1) * sorted.size() / MERGE_SHARDS));
+        }
+        return out;
+    }
+
+    /** Journal and scheduler name of shard {@code k}, e.g. "shard 2/8". */
+    private static String shardTable(int k) {
+        return "shard " + (k + 1) + "/" + MERGE_SHARDS;
+    }
+
+    /**
+     * Discovers the worksets of both sources at once. Within a schema only the real dependency chains
+     * run in order (extraction -> workflow -> assembly, cyclesequencing -> traces); everything else
+     * keyed by plate fans out on WORKSET_THREADS, each query on its own pooled source connection.
+     */
+    private static List<Workset> buildWorksets(Checkpoints checkpoints, String... schemas) throws SQLException {
+        long start = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(WORKSET_THREADS);
+        try {
+            List<CompletableFuture<Workset>> pending = new ArrayList<>();
+            for (String schema : schemas) pending.add(buildWorksetForSchema(schema, checkpoints.plates(schema), pool));
+            List<Workset> out = new ArrayList<>();
+            for (CompletableFuture<Workset> f : pending) out.add(join(f));
+            System.out.println("  Worksets built in " + (System.currentTimeMillis() - start) + " ms");
+            return out;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static CompletableFuture<Workset> buildWorksetForSchema(String schema, List<Long> resumedPlates,
+                                                                    ExecutorService pool) {
+        CompletableFuture<List<Long>> plates = resumedPlates != null
+                ? CompletableFuture.completedFuture(resumedPlates)
+                : query(schema, pool, MergeSubset::selectPlateIds);
+
+        return plates.thenCompose(plateIds -> {
+            if (MERGE_SHARDS <= 0) return discover(schema, plateIds, pool);
+            // Each shard's subtree is discovered from its own plates, so ids need no plate lookup to be split
+            List<CompletableFuture<Workset>> parts = new ArrayList<>();
+            for (List<Long> shard : shardPlates(plateIds)) parts.add(discover(schema, shard, pool));
+            return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).thenApply(v ->
+                    Workset.union(schema, parts.stream().map(CompletableFuture::join).collect(Collectors.toList())));
+        }).thenApply(ws -> {
+            StringJoiner counts = new StringJoiner(", ");
+            ws.ids.forEach((table, ids) -> counts.add(table + " " + ids.size()));
+            System.out.println("\nWorkset for " + schema + "\n  Plates: " + ws.ids.get("plate") + "\n  " + counts +
+                    (ws.shards.isEmpty() ? "" : "\n  " + ws.shards.size() + " shards of " +
+                            ws.shards.stream().map(sh -> String.valueOf(sh.ids.get("plate").size()))
+                              .collect(Collectors.joining("/")) + " plates"));
+            return ws;
+        });
+    }
+
+    /** Ids of every plate-scoped table reachable from {@code plateIds}. */
+    private static CompletableFuture<Workset> discover(String schema, List<Long> plateIds, ExecutorService pool) {
+        // extraction -> workflow -> assembly (+ failure reasons in the same pass)
+        CompletableFuture<Set<Long>> extractions = query(schema, pool, src -> selectIds(src,
+                "SELECT id FROM extraction WHERE %s", "plate", plateIds));
+        CompletableFuture<Set<Long>> workflows = extractions.thenCompose(ids -> query(schema, pool, src -> selectIds(src,
+                "SELECT id FROM workflow WHERE %s", "extractionId", ids)));
+        Set<Long> assemblyIds = new LinkedHashSet<>();
+        Set<Long> frIds = new LinkedHashSet<>();
+        CompletableFuture<Void> assemblies = workflows.thenCompose(ids -> query(schema, pool, src -> selectColumns(src,
+                "SELECT id, failure_reason FROM assembly WHERE %s", "workflow", ids, assemblyIds, frIds)));
+
+        // cyclesequencing (+ cocktails) -> traces
+        Set<Long> csIds = new LinkedHashSet<>();
+        Set<Long> csCocktailIds = new LinkedHashSet<>();
+        CompletableFuture<Set<Long>> traces = query(schema, pool, src -> selectColumns(src,
+                "SELECT id, cocktail FROM cyclesequencing WHERE %s", "plate", plateIds, csIds, csCocktailIds))
+                .thenCompose(v -> query(schema, pool, src -> selectIds(src,
+                        "SELECT id FROM traces WHERE %s", "reaction", csIds)));
+
+        // Independent of everything but the plates
+        Set<Long> pcrIds = new LinkedHashSet<>();
+        Set<Long> pcrCocktailIds = new LinkedHashSet<>();
+        CompletableFuture<Void> pcr = query(schema, pool, src -> selectColumns(src,
+                "SELECT id, cocktail FROM pcr WHERE %s", "plate", plateIds, pcrIds, pcrCocktailIds));
+        CompletableFuture<Set<Long>> gq = query(schema, pool, src -> selectIds(src,
+                "SELECT id FROM gel_quantification WHERE %s", "plate", plateIds));
+        CompletableFuture<Set<Long>> gi = query(schema, pool, src -> selectIds(src,
+                "SELECT id FROM gelimages WHERE %s", "plate", plateIds));
+
+        return CompletableFuture.allOf(extractions, workflows, assemblies, traces, pcr, gq, gi).thenApply(v -> {
+            Workset ws = new Workset();
+            ws.schema = schema;
+            ws.ids.put("plate", new LinkedHashSet<>(plateIds));
+            ws.ids.put("extraction", extractions.join());
+            ws.ids.put("workflow", workflows.join());
+            ws.ids.put("assembly", assemblyIds);
+            ws.assemblyIds.addAll(assemblyIds);
+            if (!frIds.isEmpty()) ws.ids.put("failure_reason", frIds);
+            ws.ids.put("cyclesequencing", csIds);
+            ws.reactionIds.addAll(csIds);
+            ws.ids.put("pcr", pcrIds);
+            ws.pcrCocktailIds = pcrCocktailIds;
+            ws.csCocktailIds = csCocktailIds;
+            ws.ids.put("traces", traces.join());
+            ws.ids.put("gel_quantification", gq.join());
+            ws.ids.put("gelimages", gi.join());
+            if (!ws.pcrCocktailIds.isEmpty()) ws.ids.put("pcr_cocktail", ws.pcrCocktailIds);
+            if (!ws.csCocktailIds.isEmpty())  ws.ids.put("cyclesequencing_cocktail", ws.csCocktailIds);
+            return ws;
+        });
+    }
+
+    @FunctionalInterface
+    private interface SourceQuery<T> {
+        T run(Connection src) throws SQLException;
+    }
+
+    /** Runs {@code q} on {@code pool} with a source connection of its own. */
+    private static <T> CompletableFuture<T> query(String schema, ExecutorService pool, SourceQuery<T> q) {
+        return CompletableFuture.supplyAsync(() -> {
+            try (Connection src = openSrc(schema)) {
+                return q.run(src);
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        }, pool);
+    }
+
+    private static <T> T join(CompletableFuture<T> f) throws SQLException {
+        try {
+            return f.join();
+        } catch (CompletionException e) {
+            Throwable c = e.getCause();
+            if (c instanceof SQLException) throw (SQLException) c;
+            if (c instanceof RuntimeException) throw (RuntimeException) c;
+            throw new SQLException(c);
+        }
+    }
+
+    private static List<Long> selectPlateIds(Connection src) throws SQLException {
+        List<Long> out = new ArrayList<>();
+        String sql;
+        List<Object> params = new ArrayList<>();
+        if (INCREMENTAL) {
+            // Watermarks are per table, so an incremental run has to look at every plate
+            sql = "SELECT id FROM plate ORDER BY date DESC, id DESC";
+        } else if (!PLATE_NAMES_FILTER.isEmpty()) {
+            sql = "SELECT id FROM plate WHERE name IN (" + placeholders(PLATE_NAMES_FILTER.size()) +
+                  ") ORDER BY date DESC, id DESC";
+            params.addAll(PLATE_NAMES_FILTER);
+        } else {
+            sql = "SELECT id FROM plate ORDER BY date DESC, id DESC";
+        }
+        if (MAX_PLATES > 0 && !INCREMENTAL) {
+            sql += " LIMIT ?";
+            params.add(MAX_PLATES);
+        }
+        try (PreparedStatement ps = src.prepareStatement(sql)) {
+            bind(ps, params);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out.add(rs.getLong(1));
+            }
+        }
+        return out;
+    }
+
+    /** Runs {@code sql} (with a single {@code %s} for the key predicate) once per chunk of {@code keys}. */
+    private static Set<Long> selectIds(Connection conn, String sql, String keyCol, Collection<Long> keys) throws SQLException {
+        Set<Long> out = new LinkedHashSet<>();
+        selectColumns(conn, sql, keyCol, keys, out);
+        return out;
+    }
+
+    /** Like {@link #selectIds}, collecting the non-null values of result column i + 1 into {@code outs[i]}. */
+    @SafeVarargs
+    private static Void selectColumns(Connection conn, String sql, String keyCol, Collection<Long> keys,
+                                      Set<Long>... outs) throws SQLException {
+        for (KeyChunk chunk : KeyChunk.split(keys)) {
+            try (PreparedStatement ps = conn.prepareStatement(String.format(sql, chunk.predicate(keyCol)))) {
+                chunk.bind(ps, 1);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        for (int i = 0; i < outs.length; i++) {
+                            long v = rs.getLong(i + 1);
+                            if (!rs.wasNull()) outs[i].add(v);
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    // ---------- Global tables ----------
+    private static final List<String> GLOBAL_TABLES = Arrays.asList(
+            "thermocycle", "cycle", "state", "pcr_thermocycle", "cyclesequencing_thermocycle");
+
+    private static void scheduleGlobalTables(MergeScheduler sched, String schema, boolean reindex, MergeContext ctx) {
+        for (String table : GLOBAL_TABLES) {
+            TablePlan t = ctx.catalog.table(table);
+            sched.add(node(schema, table), parentNodes(schema, t), ctx.checkpoints.track(schema, table,
+                    dst -> insertWholeTable(dst, schema, t, reindex, ctx)));
+        }
+    }
+
+    private static void insertWholeTable(Connection dst, String srcSchema, TablePlan t, boolean reindex,
+                                         MergeContext ctx) throws SQLException {
+        String pk = t.requirePk();
+        IdRemap remap = ctx.plan.forTable(t.table, reindex);
+        long resumeAfter = ctx.checkpoints.lastId(srcSchema, t.table);
+        String sql = t.selectSql() + " WHERE 1=1" + resumePredicate(pk, resumeAfter) +
+                     remap.deltaPredicate(pk) + " ORDER BY `" + pk + "`";
+        Metrics.TableStats stats = ctx.metrics.table(srcSchema, t.table);
+        try (Connection src = openSrc(srcSchema); PreparedStatement ps = prepareStreaming(src, sql)) {
+            remap.bindDelta(ps, bindResume(ps, 1, resumeAfter));
+            long t0 = System.nanoTime();
+            try (ResultSet rs = ps.executeQuery()) {
+                stats.fetchNanos.add(System.nanoTime() - t0);
+                insertResultSet(dst, t, rs, reindex, ctx);
+            }
+        }
+    }
+
+    // ---------- Insert subset ----------
+    // Plate-scoped tables, in the order a single-threaded run inserts them
+    private static final List<String> SUBSET_TABLES = Arrays.asList(
+            "plate", "extraction", "workflow", "failure_reason", "assembly",
+            "pcr_cocktail", "cyclesequencing_cocktail",
+            "pcr", "cyclesequencing", "traces", "gel_quantification", "gelimages");
+
+    // Subset tables referenced from many plates; sharded runs copy them once, beside the shards
+    private static final List<String> SHARED_TABLES = Arrays.asList(
+            "failure_reason", "pcr_cocktail", "cyclesequencing_cocktail");
+
+    private static void scheduleSubset(MergeScheduler sched, Workset ws, boolean reindex, MergeContext ctx) {
+        boolean sharded = !ws.shards.isEmpty();
+        for (String table : SUBSET_TABLES) {
+            if (sharded && !SHARED_TABLES.contains(table)) continue;
+            Set<Long> ids = ws.ids.get(table);
+            if (ids == null || ids.isEmpty()) continue;
+            TablePlan t = ctx.catalog.table(table);
+            List<String> parents = parentNodes(ws.schema, t);
+            // LABBENCH unique-value renames must see the LIMS rows already in DEST
+            if (reindex && !t.uniqueColumns().isEmpty()) parents.add(node(SCHEMA_LIMS, table));
+            sched.add(node(ws.schema, table), parents, ctx.checkpoints.track(ws.schema, table,
+                    dst -> insertByIds(dst, ws.schema, t, ids, reindex, ctx)));
+        }
+        List<String> linked = Arrays.asList(node(ws.schema, "cyclesequencing"), node(ws.schema, "assembly"));
+        if (sharded) {
+            linked = new ArrayList<>();
+            for (int k = 0; k < ws.shards.size(); k++) {
+                Workset shard = ws.shards.get(k);
+                if (shard.isEmpty()) continue;
+                String name = shardTable(k);
+                if (ctx.checkpoints.resuming() && ctx.checkpoints.frozen(ws.schema, name) == null) {
+                    throw new IllegalStateException("Checkpoint has no " + node(ws.schema, name) +
+                            "; resume with the MERGE_SHARDS the interrupted run used");
+                }
+                sched.add(node(ws.schema, name), Collections.emptyList(), ctx.checkpoints.track(ws.schema, name,
+                        dst -> insertShard(dst, shard, reindex, ctx)));
+                linked.add(node(ws.schema, name));
+            }
+        }
+        sched.add(node(ws.schema, "sequencing_result"), linked,
+                ctx.checkpoints.track(ws.schema, "sequencing_result",
+                        dst -> ctx.links.merge(dst, ws.schema, ws.reactionIds, ws.assemblyIds, reindex, ctx)));
+    }
+
+    /**
+     * One shard's plate-scoped tables in FK order. FK checks are off because a row
+     * may reference another shard's (pcr and cyclesequencing name workflows, gel_quantification extractions
+     * of other plates), which need not be in DEST yet; {@link #verifyReferences} catches what never arrives.
+     */
+    private static void insertShard(Connection dst, Workset shard, boolean reindex, MergeContext ctx) throws SQLException {
+        try (Statement st = dst.createStatement()) {
+            st.execute("SET foreign_key_checks = 0");
+        }
+        try {
+            for (String table : SUBSET_TABLES) {
+                if (SHARED_TABLES.contains(table)) continue;
+                insertByIds(dst, shard.schema, ctx.catalog.table(table), shard.ids.get(table), reindex, ctx);
+            }
+        } finally {
+            // Pooled connections go back to other jobs with checks on
+            try (Statement st = dst.createStatement()) {
+                st.execute("SET foreign_key_checks = 1");
+            }
+        }
+    }
+
+    /**
+     * After a sharded merge: fails the run if a declared FK of a plate-scoped table points at a row DEST lacks,
+     * which the shards' unchecked inserts would otherwise leave behind (e.g. a pcr naming an unselected plate's
+     * workflow, which a table-at-a-time run rejects on insert).
+     */
+    private static void verifyReferences(Connection dst, SchemaCatalog catalog) throws SQLException {
+        // With more threads the shards committed on pooled connections and this one holds no writes;
+        // start a fresh snapshot so the check sees their rows
+        if (MERGE_THREADS > 1) dst.commit();
+        List<String> dangling = new ArrayList<>();
+        for (String table : SUBSET_TABLES) {
+            TablePlan t = catalog.table(table);
+            for (int i = 0; i < t.columns.length; i++) {
+                if (t.refs[i] == null || t.implicit[i]) continue;
+                String parentPk = catalog.table(t.refs[i]).requirePk();
+                String sql = "SELECT COUNT(*) FROM " + table + " c LEFT JOIN " + t.refs[i] + " p" +
+                             " ON p.`" + parentPk + "` = c.`" + t.columns[i] + "`" +
+                             " WHERE c.`" + t.columns[i] + "` IS NOT NULL AND p.`" + parentPk + "` IS NULL";
+                try (Statement st = dst.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+                    rs.next();
+                    long n = rs.getLong(1);
+                    if (n > 0) dangling.add(table + "." + t.columns[i] + " -> " + t.refs[i] + ": " + n + " row(s)");
+                }
+            }
+        }
+        if (!dangling.isEmpty()) {
+            throw new SQLException("Sharded merge left references to missing rows: " + String.join("; ", dangling));
+        }
+        System.out.println("  References verified");
+    }
+
+    private static void insertByIds(Connection dst, String srcSchema, TablePlan t, Set<Long> ids, boolean reindex,
+                                    MergeContext ctx) throws SQLException {
+        if (ids == null || ids.isEmpty()) return;
+        String pk = t.requirePk();
+        IdRemap remap = ctx.plan.forTable(t.table, reindex);
+        long resumeAfter = ctx.checkpoints.lastId(srcSchema, t.table);
+        Metrics.TableStats stats = ctx.metrics.table(srcSchema, t.table);
+        try (Connection src = openSrc(srcSchema)) {
+            // Chunks come in ascending key order and rows in PK order, so a checkpoint is just the last id
+            for (KeyChunk chunk : KeyChunk.split(ids)) {
+                if (chunk.hi <= resumeAfter) continue;
+                String sql = t.selectSql() + " WHERE " + chunk.predicate(pk) +
+                             resumePredicate(pk, resumeAfter) + remap.deltaPredicate(pk) + " ORDER BY `" + pk + "`";
+                try (PreparedStatement ps = prepareStreaming(src, sql)) {
+                    remap.bindDelta(ps, bindResume(ps, chunk.bind(ps, 1), resumeAfter));
+                    long t0 = System.nanoTime();
+                    try (ResultSet rs = ps.executeQuery()) {
+                        stats.fetchNanos.add(System.nanoTime() - t0);
+                        insertResultSet(dst, t, rs, reindex, ctx);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void insertResultSet(Connection dst, TablePlan t, ResultSet rs, boolean reindex,
+                                        MergeContext ctx) throws SQLException {
+        // rs comes from t.selectSql(), so column i + 1 of the row is plan column i and insert parameter i + 1
+        RowMapper m = new RowMapper(t, reindex, ctx);
+        if (BulkLoader.usable(dst, t, m.remap)) {
+            BulkLoader.load(dst, rs, m);
+            return;
+        }
+        if (PIPELINE_DEPTH > 0 && (!t.hasLob || PIPELINE_LOBS)) {
+            Pipeline.copy(dst, rs, m);
+            return;
+        }
+        String sql = t.insertSql(m.remap.upserts());
+        int cols = t.columns.length;
+        int[] types = t.types;
+        int batchSize = t.hasLob ? BLOB_BATCH_SIZE : BATCH_SIZE;
+
+        Metrics.TableStats stats = m.stats;
+        try (PreparedStatement ins = dst.prepareStatement(sql)) {
+            int batch = 0;
+            long t0 = System.nanoTime();
+            while (rs.next()) {
+                long t1 = System.nanoTime();
+                stats.fetchNanos.add(t1 - t0);
+                stats.rowsRead.increment();
+                for (int i = 0; i < cols; i++) {
+                    int c = i + 1;
+                    switch (t.transfer[i]) {
+                        case LONG: {
+                            // PK and FK remaps ride on the long path (see RowMapper.id)
+                            long v = rs.getLong(c);
+                            if (rs.wasNull()) ins.setNull(c, types[i]);
+                            else ins.setLong(c, m.id(i, v));
+                            break;
+                        }
+                        case DOUBLE: {
+                            double v = rs.getDouble(c);
+                            if (rs.wasNull()) ins.setNull(c, types[i]);
+                            else ins.setDouble(c, v);
+                            break;
+                        }
+                        case STRING: {
+                            String v = rs.getString(c);
+                            if (t.unique[i]) v = m.unique(i, v, rs);
+                            if (v == null) ins.setNull(c, types[i]);
+                            else ins.setString(c, v);
+                            break;
+                        }
+                        case BYTES: {
+                            if (m.dedups(i)) {
+                                // Hashing needs the whole blob
+                                byte[] v = m.blob(i, rs.getBytes(c));
+                                if (v == null) ins.setNull(c, types[i]);
+                                else ins.setBytes(c, v);
+                                break;
+                            }
+                            // Blobs flow through as streams instead of being copied into the row first
+                            InputStream in = rs.getBinaryStream(c);
+                            if (in == null) ins.setNull(c, types[i]);
+                            else ins.setBinaryStream(c, stats.counting(in));
+                            break;
+                        }
+                        case CHARS: {
+                            Reader r = rs.getCharacterStream(c);
+                            if (r == null) ins.setNull(c, types[i]);
+                            else ins.setCharacterStream(c, stats.counting(r));
+                            break;
+                        }
+                        default:
+                            ins.setObject(c, rs.getObject(c));
+                    }
+                }
+                ins.addBatch();
+                t0 = System.nanoTime();
+                stats.remapNanos.add(t0 - t1);
+                if (++batch % batchSize == 0) {
+                    stats.executed(ins.executeBatch().length, t0);
+                    m.blobsDone(dst, m.takeBlobs());
+                    ctx.checkpoints.batchDone(dst, m.remap, m.lastSrcId);
+                    t0 = System.nanoTime();
+                }
+            }
+            if (batch % batchSize != 0) {
+                t0 = System.nanoTime();
+                stats.executed(ins.executeBatch().length, t0);
+                m.blobsDone(dst, m.takeBlobs());
+                ctx.checkpoints.batchDone(dst, m.remap, m.lastSrcId);
+            }
+        }
+    }
+
+    /**
+     * PK, FK and unique-value handling for one table copy, shared by the INSERT and LOAD DATA paths.
+     * Ids go through the frozen {@link IdRemap}s, looked up once per copy, not per row.
+     */
+    static final class RowMapper {
+        final TablePlan t;
+        final IdRemap remap;
+        final MergeContext ctx;
+        final Metrics.TableStats stats;
+        private final boolean reindex;
+        private final IdRemap[] fkRemaps;
+        private final MessageDigest sha;      // null without blob dedup
+        private List<BlobCache.Ref> blobRefs = new ArrayList<>();
+        long lastSrcId;
+        private long lastNewId;
+
+        RowMapper(TablePlan t, boolean reindex, MergeContext ctx) {
+            this.t = t;
+            this.remap = ctx.plan.forTable(t.table, reindex);
+            this.ctx = ctx;
+            this.stats = ctx.metrics.table(remap.schema, t.table);
+            this.reindex = reindex;
+            this.fkRemaps = new IdRemap[t.columns.length];
+            for (int i = 0; i < t.columns.length; i++) {
+                if (t.refs[i] == null) continue;
+                fkRemaps[i] = ctx.plan.forTable(t.refs[i], reindex);
+            }
+            try {
+                this.sha = ctx.blobs != null && t.pkIndex >= 0 ? MessageDigest.getInstance("SHA-256") : null;
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 unavailable", e);
+            }
+        }
+
+        /** New value of integer column {@code i}: PK and FK columns are remapped, others pass through. */
+        long id(int i, long old) {
+            if (i == t.pkIndex) return pk(old);
+            return fkRemaps[i] != null ? ref(i, old) : old;
+        }
+
+        long pk(long oldId) {
+            lastSrcId = oldId;
+            lastNewId = remap.map(oldId);
+            return lastNewId;
+        }
+
+        /** True when binary column {@code i} goes through {@link #blob} (it comes after the row's PK). */
+        boolean dedups(int i) {
+            return sha != null && i > t.pkIndex;
+        }
+
+        /**
+         * Bytes to bind for blob column {@code i} of the current row: the blob itself, or the empty
+         * placeholder when DEST already holds it (the copy is queued for {@link #blobsDone}).
+         */
+        byte[] blob(int i, byte[] v) {
+            if (v == null || !dedups(i)) return v;
+            BlobCache cache = ctx.blobs;
+            String hash = BlobCache.sha256(sha, v);
+            cache.blobs.increment();
+            Object owner = MERGE_THREADS == 1 ? null : this;
+            BlobCache.Location source = cache.find(hash, this);
+            if (source == null) {
+                cache.put(hash, new BlobCache.Location(t.table, t.columns[i], t.pk, lastNewId, owner));
+                blobRefs.add(new BlobCache.Ref(hash, i, lastNewId, null, null));
+                return v;
+            }
+            cache.duplicates.increment();
+            cache.dupBytes.add(v.length);
+            stats.dedupBlobs.increment();
+            stats.dedupBytes.add(v.length);
+            blobRefs.add(new BlobCache.Ref(hash, i, lastNewId, source, v));
+            return BlobCache.PLACEHOLDER;
+        }
+
+        /** Blobs of the rows since the last call, to complete once their batch has executed. */
+        List<BlobCache.Ref> takeBlobs() {
+            if (blobRefs.isEmpty()) return Collections.emptyList();
+            List<BlobCache.Ref> out = blobRefs;
+            blobRefs = new ArrayList<>();
+            return out;
+        }
+
+        void blobsDone(Connection dst, List<BlobCache.Ref> refs) throws SQLException {
+            if (!refs.isEmpty()) ctx.blobs.afterBatch(dst, t, refs, MERGE_THREADS == 1 ? null : this);
+        }
+
+        boolean isRef(int i) {
+            return fkRemaps[i] != null;
+        }
+
+        long ref(int i, long oldFk) {
+            if (t.implicit[i] && oldFk <= 0) return oldFk;
+            return fkRemaps[i].map(oldFk);
+        }
+
+        /**
+         * Unique string conflicts: LIMS values are recorded, new LABBENCH values renamed on collision
+         * (rows merged by an earlier run keep DEST's value, see TablePlan.insertSql).
+         */
+        String unique(int i, String s, ResultSet rs) throws SQLException {
+            if (s == null) return null;
+            long rowId = t.pkIndex >= 0 ? rs.getLong(t.pkIndex + 1) : 0L;
+            if (reindex && !remap.merged(rowId)) {
+                String out = ctx.unique.claim(t.table, t.columns[i], s, rowId);
+                if (!out.equals(s)) stats.renames.increment();
+                return out;
+            }
+            if (!reindex) ctx.unique.record(t.table, t.columns[i], s);
+            return s;
+        }
+    }
+
+    // ---------- Sequencing links ----------
+    /**
+     * The sequencing_result stage. Its rows are (reaction, assembly) links with a composite key and no id of
+     * their own, so they are merged as sets rather than through the row copier: the links touching a workset
+     * are streamed in key order, once by chunks of its reactions and once by chunks of its assemblies, and
+     * membership is a binary search in the sorted id sets. Links with both ends in the workset are remapped
+     * through the frozen plan (no DEST query) and inserted. Links with one end
+     * outside it are orphans, which DEST's FKs would reject; they are counted and reported, not dropped silently.
+     */
+    private static final class SequencingLinks {
+        private final List<String[]> orphans = new ArrayList<>();
+
+        @FunctionalInterface
+        private interface Link {
+            void accept(long reaction, long assembly) throws SQLException;
+        }
+
+        void merge(Connection dst, String srcSchema, Set<Long> reactionIds, Set<Long> assemblyIds, boolean reindex,
+                   MergeContext ctx) throws SQLException {
+            long[] reactions = sorted(reactionIds);
+            long[] assemblies = sorted(assemblyIds);
+            if (reactions.length == 0 && assemblies.length == 0) return;
+            IdRemap reactionRemap = ctx.plan.forTable("cyclesequencing", reindex);
+            IdRemap assemblyRemap = ctx.plan.forTable("assembly", reindex);
+            // Links carry no watermark or checkpoint of their own; incremental and resumed runs re-read them
+            // and skip the ones already there
+            boolean ignoreExisting = INCREMENTAL || ctx.checkpoints.resuming();
+            String sql = "INSERT" + (ignoreExisting ? " IGNORE" : "") + " INTO sequencing_result (reaction, assembly) VALUES (?, ?)";
+            Metrics.TableStats stats = ctx.metrics.table(srcSchema, "sequencing_result");
+            List<String[]> found = new ArrayList<>();
+            try (Connection src = openSrc(srcSchema); PreparedStatement ins = dst.prepareStatement(sql)) {
+                int[] pending = { 0 };
+                // Every link of a workset reaction; its assembly decides between insert and orphan
+                stream(src, reactionIds, "reaction", "assembly", stats, (r, a) -> {
+                    if (Arrays.binarySearch(assemblies, a) < 0) {
+                        found.add(new String[] { srcSchema, Long.toString(r), Long.toString(a), "assembly" });
+                        return;
+                    }
+                    ins.setLong(1, reactionRemap.map(r));
+                    ins.setLong(2, assemblyRemap.map(a));
+                    ins.addBatch();
+                    if (++pending[0] == BATCH_SIZE) {
+                        long t0 = System.nanoTime();
+                        stats.executed(ins.executeBatch().length, t0);
+                        pending[0] = 0;
+                    }
+                });
+                // Links of a workset assembly: the ones with a workset reaction came with the first pass
+                stream(src, assemblyIds, "assembly", "reaction", stats, (r, a) -> {
+                    if (Arrays.binarySearch(reactions, r) < 0) {
+                        found.add(new String[] { srcSchema, Long.toString(r), Long.toString(a), "reaction" });
+                    }
+                });
+                if (pending[0] > 0) {
+                    long t0 = System.nanoTime();
+                    stats.executed(ins.executeBatch().length, t0);
+                }
+            }
+            if (!found.isEmpty()) {
+                stats.orphans.add(found.size());
+                System.out.println("     " + node(srcSchema, "sequencing_result") + ": " + found.size() +
+                        " link(s) to a reaction or assembly outside the merged plates, not merged");
+                synchronized (this) {
+                    orphans.addAll(found);
+                }
+            }
+        }
+
+        /** Links whose {@code by} column is in {@code keys}, in ({@code by}, {@code then}) order. */
+        private static void stream(Connection src, Set<Long> keys, String by, String then, Metrics.TableStats stats,
+                                   Link link) throws SQLException {
+            for (KeyChunk chunk : KeyChunk.split(keys)) {
+                String sql = "SELECT reaction, assembly FROM sequencing_result WHERE " + chunk.predicate(by) +
+                             " ORDER BY `" + by + "`, `" + then + "`";
+                try (PreparedStatement ps = prepareStreaming(src, sql)) {
+                    chunk.bind(ps, 1);
+                    long t0 = System.nanoTime();
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            long t1 = System.nanoTime();
+                            stats.fetchNanos.add(t1 - t0);
+                            stats.rowsRead.increment();
+                            link.accept(rs.getLong(1), rs.getLong(2));
+                            t0 = System.nanoTime();
+                            stats.remapNanos.add(t0 - t1);
+                        }
+                    }
+                }
+            }
+        }
+
+        private static long[] sorted(Set<Long> ids) {
+            return ids == null ? new long[0] : ids.stream().mapToLong(Long::longValue).sorted().toArray();
+        }
+
+        synchronized void writeReport(Path file) throws IOException {
+            try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                w.write("source_schema,reaction,assembly,outside_workset\n");
+                for (String[] o : orphans) w.write(String.join(",", o) + "\n");
+            }
+            System.out.println("Skipped " + orphans.size() + " orphaned sequencing_result link(s); report: " +
+                    file.toAbsolutePath());
+        }
+    }
+
+    // ---------- Pipelined copy ----------
+    /**
+     * Batched INSERT path with the source and DEST round trips overlapped: the calling thread fetches
+     * and remaps rows into {@link RowBatch}es, a writer thread binds and executes them on DEST. The
+     * queue between them holds PIPELINE_DEPTH batches and PIPELINE_BUFFER_MB of LOBs, so a slow side
+     * stalls the other instead of letting batches pile up. The writer owns the DEST connection until the
+     * copy returns, including per-batch checkpoint commits.
+     */
+    private static final class Pipeline {
+        private static final ExecutorService WRITERS = Executors.newCachedThreadPool(r -> {
+            Thread th = new Thread(r, "merge-writer");
+            th.setDaemon(true);
+            return th;
+        });
+
+        /**
+         * Remapped rows of one INSERT batch, cell (row r, column i) at r * cols + i. LONG and DOUBLE
+         * cells sit unboxed in {@link #prims} (doubles as raw bits) with {@link #nulls}; every other
+         * cell is the object bound for it (String, byte[] for blobs, or getObject's value).
+         */
+        private static final class RowBatch {
+            final long[] prims;
+            final boolean[] nulls;
+            final Object[] objects;
+            int size;
+            int lobKb;
+            long lastSrcId;
+            List<BlobCache.Ref> blobs = Collections.emptyList();
+
+            RowBatch(int capacity, int cols) {
+                prims = new long[capacity * cols];
+                nulls = new boolean[capacity * cols];
+                objects = new Object[capacity * cols];
+            }
+        }
+
+        private static final RowBatch END   = new RowBatch(0, 0);
+        private static final RowBatch ABORT = new RowBatch(0, 0);
+
+        static void copy(Connection dst, ResultSet rs, RowMapper m) throws SQLException {
+            BlockingQueue<RowBatch> queue = new ArrayBlockingQueue<>(PIPELINE_DEPTH);
+            // LOB kilobytes of queued batches; a batch bigger than the whole budget takes all of it
+            Semaphore buffer = new Semaphore(bufferKb());
+            Future<?> writer = WRITERS.submit(() -> { write(dst, queue, buffer, m); return null; });
+            boolean ok = false;
+            try {
+                read(rs, m, queue, buffer, writer);
+                hand(queue, buffer, END, writer);
+                writer.get();
+                ok = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted copying " + m.t.table, e);
+            } catch (ExecutionException e) {
+                Throwable c = e.getCause();
+                if (c instanceof SQLException) throw (SQLException) c;
+                if (c instanceof RuntimeException) throw (RuntimeException) c;
+                throw new SQLException(c);
+            } finally {
+                if (!ok) {
+                    // Stop the writer and wait for it, so DEST is not in use once the copy has failed
+                    queue.clear();
+                    queue.offer(ABORT);
+                    try {
+                        writer.get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (ExecutionException ignore) {
+                        // the reader's error is the one reported
+                    }
+                }
+            }
+        }
+
+        private static void read(ResultSet rs, RowMapper m, BlockingQueue<RowBatch> queue, Semaphore buffer,
+                                 Future<?> writer) throws SQLException, InterruptedException, ExecutionException {
+            TablePlan t = m.t;
+            Metrics.TableStats stats = m.stats;
+            int cols = t.columns.length;
+            int batchSize = t.hasLob ? BLOB_BATCH_SIZE : BATCH_SIZE;
+            RowBatch batch = new RowBatch(batchSize, cols);
+            long lobBytes = 0;
+            long t0 = System.nanoTime();
+            while (rs.next()) {
+                long t1 = System.nanoTime();
+                stats.fetchNanos.add(t1 - t0);
+                stats.rowsRead.increment();
+                int k = batch.size++ * cols;
+                for (int i = 0; i < cols; i++, k++) {
+                    int c = i + 1;
+                    switch (t.transfer[i]) {
+                        case LONG: {
+                            long v = rs.getLong(c);
+                            if (rs.wasNull()) batch.nulls[k] = true;
+                            else batch.prims[k] = m.id(i, v);
+                            break;
+                        }
+                        case DOUBLE: {
+                            double v = rs.getDouble(c);
+                            if (rs.wasNull()) batch.nulls[k] = true;
+                            else batch.prims[k] = Double.doubleToRawLongBits(v);
+                            break;
+                        }
+                        case STRING: {
+                            String v = rs.getString(c);
+                            batch.objects[k] = t.unique[i] ? m.unique(i, v, rs) : v;
+                            break;
+                        }
+                        case BYTES: {
+                            byte[] v = rs.getBytes(c);
+                            if (v != null) {
+                                stats.lobBytes.add(v.length);
+                                lobBytes += v.length;
+                            }
+                            batch.objects[k] = m.blob(i, v);
+                            break;
+                        }
+                        case CHARS: {
+                            String v = rs.getString(c);
+                            if (v != null) {
+                                stats.lobBytes.add(v.length());
+                                lobBytes += 2L * v.length();
+                            }
+                            batch.objects[k] = v;
+                            break;
+                        }
+                        default:
+                            batch.objects[k] = rs.getObject(c);
+                    }
+                }
+                batch.lastSrcId = m.lastSrcId;
+                t0 = System.nanoTime();
+                stats.remapNanos.add(t0 - t1);
+                if (batch.size == batchSize) {
+                    batch.blobs = m.takeBlobs();
+                    batch.lobKb = lobKb(lobBytes);
+                    hand(queue, buffer, batch, writer);
+                    batch = new RowBatch(batchSize, cols);
+                    lobBytes = 0;
+                    t0 = System.nanoTime();
+                }
+            }
+            if (batch.size > 0) {
+                batch.blobs = m.takeBlobs();
+                batch.lobKb = lobKb(lobBytes);
+                hand(queue, buffer, batch, writer);
+            }
+        }
+
+        private static int bufferKb() {
+            return (int) Math.min(Integer.MAX_VALUE, Math.max(1L, PIPELINE_BUFFER_MB * 1024L));
+        }
+
+        /** LOB size of a batch in buffer permits, at most the whole budget so any batch can be queued. */
+        private static int lobKb(long bytes) {
+            return (int) Math.min(bufferKb(), (bytes + 1023) / 1024);
+        }
+
+        /**
+         * Queues {@code batch} once its LOBs fit the buffer and the queue has room, waiting unless the
+         * writer has stopped (its error is rethrown).
+         */
+        private static void hand(BlockingQueue<RowBatch> queue, Semaphore buffer, RowBatch batch, Future<?> writer)
+                throws InterruptedException, ExecutionException {
+            while (!buffer.tryAcquire(batch.lobKb, 100, TimeUnit.MILLISECONDS)) checkWriter(writer);
+            while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) checkWriter(writer);
+        }
+
+        private static void checkWriter(Future<?> writer) throws InterruptedException, ExecutionException {
+            if (writer.isDone()) {
+                writer.get();
+                throw new IllegalStateException("Writer stopped before the copy finished");
+            }
+        }
+
+        private static void write(Connection dst, BlockingQueue<RowBatch> queue, Semaphore buffer, RowMapper m)
+                throws SQLException, InterruptedException {
+            TablePlan t = m.t;
+            int[] types = t.types;
+            int cols = t.columns.length;
+            try (PreparedStatement ins = dst.prepareStatement(t.insertSql(m.remap.upserts()))) {
+                RowBatch batch;
+                while ((batch = queue.take()) != END && batch != ABORT) {
+                    long t0 = System.nanoTime();
+                    for (int k = 0, end = batch.size * cols; k < end; ) {
+                        for (int i = 0; i < cols; i++, k++) {
+                            int c = i + 1;
+                            Transfer tr = t.transfer[i];
+                            if (tr == Transfer.LONG || tr == Transfer.DOUBLE ? batch.nulls[k] : batch.objects[k] == null) {
+                                ins.setNull(c, types[i]);
+                                continue;
+                            }
+                            switch (tr) {
+                                case LONG:   ins.setLong(c, batch.prims[k]); break;
+                                case DOUBLE: ins.setDouble(c, Double.longBitsToDouble(batch.prims[k])); break;
+                                case STRING:
+                                case CHARS:  ins.setString(c, (String) batch.objects[k]); break;
+                                case BYTES:  ins.setBytes(c, (byte[]) batch.objects[k]); break;
+                                default:     ins.setObject(c, batch.objects[k]);
+                            }
+                        }
+                        ins.addBatch();
+                    }
+                    m.stats.executed(ins.executeBatch().length, t0);
+                    buffer.release(batch.lobKb);
+                    m.blobsDone(dst, batch.blobs);
+                    m.ctx.checkpoints.batchDone(dst, m.remap, batch.lastSrcId);
+                }
+            }
+        }
+    }
+
+    // ---------- Bulk load ----------
+    /**
+     * LOAD DATA LOCAL INFILE fast path. Remapped rows are encoded as TSV on demand while the driver
+     * reads the stream (binary columns as hex, decoded by UNHEX on the server), so nothing is staged
+     * on disk. Rows go in statements of up to BULK_LOAD_ROWS, each followed by a checkpoint.
+     * Upserts, BIT columns and servers with local_infile off use the batched INSERT path instead.
+     */
+    static final class BulkLoader {
+        private static volatile Boolean serverAllows;
+
+        static boolean usable(Connection dst, TablePlan t, IdRemap remap) throws SQLException {
+            if (!BULK_LOAD || remap.upserts()) return false; // LOAD DATA cannot update rows already in DEST
+            for (int type : t.types) if (type == Types.BIT) return false;
+            // Blob dedup needs the per-batch hand-off of the INSERT paths
+            if (BLOB_DEDUP && t.pkIndex >= 0) for (boolean b : t.binary) if (b) return false;
+            if (serverAllows == null) {
+                try (Statement st = dst.createStatement(); ResultSet rs = st.executeQuery("SELECT @@GLOBAL.local_infile")) {
+                    serverAllows = rs.next() && rs.getBoolean(1);
+                }
+                if (!serverAllows) System.out.println("  local_infile is OFF on DEST; bulk load falls back to batched INSERTs");
+            }
+            return serverAllows;
+        }
+
+        static void load(Connection dst, ResultSet rs, RowMapper m) throws SQLException {
+            TablePlan t = m.t;
+            StringJoiner cols = new StringJoiner(", ", " (", ")");
+            StringJoiner sets = new StringJoiner(", ", " SET ", "").setEmptyValue("");
+            for (int i = 0; i < t.columns.length; i++) {
+                if (hex(t, i)) {
+                    cols.add("@h" + i);
+                    sets.add("`" + t.columns[i] + "` = UNHEX(@h" + i + ")");
+                } else {
+                    cols.add("`" + t.columns[i] + "`");
+                }
+            }
+            String sql = "LOAD DATA LOCAL INFILE 'rows.tsv' INTO TABLE " + t.table + " CHARACTER SET utf8mb4" +
+                         " FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n'" +
+                         cols + sets;
+
+            while (true) {
+                TsvRows rows = new TsvRows(rs, m, BULK_LOAD_ROWS);
+                if (!rows.start()) break;
+                try (Statement st = dst.createStatement()) {
+                    st.unwrap(JdbcStatement.class).setLocalInfileInputStream(rows);
+                    long loaded;
+                    long t0 = System.nanoTime();
+                    long readNanos = m.stats.fetchNanos.sum() + m.stats.remapNanos.sum();
+                    try {
+                        loaded = st.executeLargeUpdate(sql);
+                    } catch (SQLException e) {
+                        if (rows.failure != null) throw rows.failure;
+                        throw e;
+                    }
+                    // The driver pulls rows while the statement runs; DEST time is what reading them did not take
+                    readNanos = m.stats.fetchNanos.sum() + m.stats.remapNanos.sum() - readNanos;
+                    m.stats.executed(loaded, t0 + readNanos);
+                    if (rows.failure != null) throw rows.failure;
+                    check(t.table, loaded, rows.count, st.getWarnings());
+                }
+                m.ctx.checkpoints.batchDone(dst, m.remap, m.lastSrcId);
+                if (rows.exhausted) break;
+            }
+        }
+
+        /**
+         * Keeps INSERT's strictness: LOCAL loads turn duplicate keys into skipped rows and conversion or
+         * truncation errors into warnings, storing a clamped or zeroed value. Either fails the load, with
+         * the first few warnings in the message.
+         */
+        static void check(String table, long loaded, int sent, SQLWarning warnings) throws SQLException {
+            if (loaded == sent && warnings == null) return;
+            StringJoiner first = new StringJoiner("; ", ": ", "").setEmptyValue("");
+            int n = 0;
+            for (SQLWarning w = warnings; w != null; w = w.getNextWarning()) {
+                if (n++ < 5) first.add(w.getMessage());
+            }
+            throw new SQLException("LOAD DATA into " + table + " kept " + loaded + " of " + sent + " rows" +
+                    (n == 0 ? "" : " with " + n + " warning(s)") + first + (n > 5 ? "; ..." : ""));
+        }
+
+        private static boolean hex(TablePlan t, int i) {
+            int type = t.types[i];
+            return t.binary[i] || type == Types.BINARY || type == Types.VARBINARY;
+        }
+
+        /** Up to {@code limit} rows of the result set as a TSV byte stream, encoded one row at a time. */
+        static final class TsvRows extends InputStream {
+            private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+            private static final byte[] NULL = { '\\', 'N' };
+
+            private final ResultSet rs;
+            private final RowMapper m;
+            private final int limit;
+            private byte[] buf = new byte[8192];
+            private int pos;
+            private int len;
+            int count;
+            boolean exhausted;
+            SQLException failure;
+
+            TsvRows(ResultSet rs, RowMapper m, int limit) {
+                this.rs = rs;
+                this.m = m;
+                this.limit = limit;
+            }
+
+            /** Encodes the first row; false when the result set has none left. */
+            boolean start() throws SQLException {
+                return nextRow();
+            }
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int n) throws IOException {
+                try {
+                    while (pos == len) {
+                        if (!nextRow()) return -1;
+                    }
+                } catch (SQLException e) {
+                    failure = e;
+                    throw new IOException("Reading rows for " + m.t.table + " failed", e);
+                }
+                int k = Math.min(n, len - pos);
+                System.arraycopy(buf, pos, b, off, k);
+                pos += k;
+                return k;
+            }
+
+            private boolean nextRow() throws SQLException {
+                pos = 0;
+                len = 0;
+                if (exhausted || count == limit) return false;
+                long t0 = System.nanoTime();
+                if (!rs.next()) {
+                    exhausted = true;
+                    m.stats.fetchNanos.add(System.nanoTime() - t0);
+                    return false;
+                }
+                long t1 = System.nanoTime();
+                m.stats.fetchNanos.add(t1 - t0);
+                m.stats.rowsRead.increment();
+                TablePlan t = m.t;
+                for (int i = 0; i < t.columns.length; i++) {
+                    if (i > 0) put((byte) '\t');
+                    int c = i + 1;
+                    int type = t.types[i];
+                    if (i == t.pkIndex || m.isRef(i)) {
+                        long v = rs.getLong(c);
+                        if (rs.wasNull()) put(NULL);
+                        else putAscii(Long.toString(i == t.pkIndex ? m.pk(v) : m.ref(i, v)));
+                    } else if (t.unique[i]) {
+                        putText(m.unique(i, rs.getString(c), rs));
+                    } else if (t.binary[i]) {
+                        putHex(rs.getBinaryStream(c));
+                    } else if (hex(t, i)) {
+                        byte[] v = rs.getBytes(c);
+                        putHex(v == null ? null : new ByteArrayInputStream(v));
+                    } else if (t.text[i]) {
+                        String v = rs.getString(c);
+                        if (v != null) m.stats.lobBytes.add(v.length());
+                        putText(v);
+                    } else if (type == Types.TINYINT || type == Types.SMALLINT
+                            || type == Types.INTEGER || type == Types.BIGINT) {
+                        long v = rs.getLong(c);
+                        if (rs.wasNull()) put(NULL);
+                        else putAscii(Long.toString(v));
+                    } else {
+                        putText(rs.getString(c));
+                    }
+                }
+                put((byte) '\n');
+                count++;
+                m.stats.remapNanos.add(System.nanoTime() - t1);
+                return true;
+            }
+
+            private void putText(String v) {
+                if (v == null) {
+                    put(NULL);
+                    return;
+                }
+                for (byte x : v.getBytes(StandardCharsets.UTF_8)) {
+                    switch (x) {
+                        case '\\': put((byte) '\\'); put((byte) '\\'); break;
+                        case '\t':  put((byte) '\\'); put((byte) 't');  break;
+                        case '\n':  put((byte) '\\'); put((byte) 'n');  break;
+                        case '\r':  put((byte) '\\'); put((byte) 'r');  break;
+                        case 0:     put((byte) '\\'); put((byte) '0');  break;
+                        default:    put(x);
+                    }
+                }
+            }
+
+            private void putHex(InputStream in) throws SQLException {
+                if (in == null) {
+                    put(NULL);
+                    return;
+                }
+                byte[] chunk = new byte[8192];
+                try (InputStream s = in) {
+                    int r;
+                    while ((r = s.read(chunk)) > 0) {
+                        m.stats.lobBytes.add(r);
+                        ensure(r * 2);
+                        for (int j = 0; j < r; j++) {
+                            buf[len++] = HEX[(chunk[j] >> 4) & 0xf];
+                            buf[len++] = HEX[chunk[j] & 0xf];
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new SQLException("Reading blob for " + m.t.table + " failed", e);
+                }
+            }
+
+            private void putAscii(String v) {
+                ensure(v.length());
+                for (int j = 0; j < v.length(); j++) buf[len++] = (byte) v.charAt(j);
+            }
+
+            private void put(byte[] v) {
+                ensure(v.length);
+                System.arraycopy(v, 0, buf, len, v.length);
+                len += v.length;
+            }
+
+            private void put(byte x) {
+                ensure(1);
+                buf[len++] = x;
+            }
+
+            private void ensure(int extra) {
+                if (len + extra > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + extra));
+            }
+        }
+    }
+
+    /** Tables with a single-column PK and a {@code lastModified} or {@code date} column to detect changed rows by. */
+    private static Map<String, String> changeColumns(Connection src) throws SQLException {
+        String sql = "SELECT c.TABLE_NAME, c.COLUMN_NAME FROM information_schema.COLUMNS c" +
+                     " WHERE c.TABLE_SCHEMA = DATABASE() AND c.COLUMN_NAME IN ('lastModified', 'date')" +
+                     " AND (SELECT COUNT(*) FROM information_schema.KEY_COLUMN_USAGE k" +
+                     "      WHERE k.TABLE_SCHEMA = c.TABLE_SCHEMA AND k.TABLE_NAME = c.TABLE_NAME" +
+                     "        AND k.CONSTRAINT_NAME = 'PRIMARY') = 1";
+        Map<String, String> out = new HashMap<>();
+        try (Statement st = src.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            while (rs.next()) {
+                // lastModified wins over date when a table has both
+                if (!"lastModified".equals(out.get(rs.getString(1)))) out.put(rs.getString(1), rs.getString(2));
+            }
+        }
+        return out;
+    }
+
+    private static Timestamp currentMaxChange(Connection conn, String table, String col) throws SQLException {
+        if (col == null) return null;
+        String sql = "SELECT MAX(`" + col + "`) FROM " + table;
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            rs.next();
+            return rs.getTimestamp(1);
+        }
+    }
+
+    private static long currentMaxId(Connection conn, String table, String pk) throws SQLException {
+        String sql = "SELECT COALESCE(MAX(" + pk + "), 0) FROM " + table;
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    // ---------- Verify ----------
+    /**
+     * Post-merge check that DEST holds the selected source rows as the run remapped them (MERGE_VERIFY), in
+     * the manner of pt-table-checksum. Each table copy of the run is split into chunks of at most
+     * KEY_CHUNK_SIZE source ids, and both sides return a row count and the XOR of per-row MD5s for a chunk,
+     * computed by the server: LOBs enter the row hash as their own MD5 and never travel. The source side
+     * applies the run's id remap in SQL (the PK and every reference, per segment in incremental runs) and
+     * both sides strip the _lb/_lbN suffix from LABBENCH unique values, the only columns a merge rewrites.
+     * Only chunks whose sums differ are fetched again as per-row hashes; rows missing from DEST, differing
+     * or unexpected there go to VERIFY_REPORT and fail the run. VERIFY_THREADS queries run at once, the
+     * source and DEST sides of a chunk concurrently.
+     */
+    private static final class Verifier {
+        private static final String LB_SUFFIX = "'_lb[0-9]*$'";
+
+        /** One table copy: the chunks its rows were read in, and how either side keys and hashes a row. */
+        private static final class Target {
+            final String schema;
+            final String table;
+            final String keyColumn;  // the chunks select on it
+            final String srcKey;     // the row's DEST-space key: DEST id, or reaction#assembly for links
+            final String dstKey;
+            final String srcRow;     // row hash input
+            final String dstRow;
+            final String srcRaw;     // source columns naming the row in the report
+            final Set<Long> linked;  // links only: assemblies of the workset (others are orphans, not merged)
+            final List<KeyChunk[]> chunks = new ArrayList<>(); // {source chunk, DEST chunk}
+            final LongAdder rows = new LongAdder();
+            final LongAdder differing = new LongAdder();
+
+            Target(String schema, String table, String keyColumn, String srcKey, String dstKey,
+                   String srcRow, String dstRow, String srcRaw, Set<Long> linked) {
+                this.schema = schema;
+                this.table = table;
+                this.keyColumn = keyColumn;
+                this.srcKey = srcKey;
+                this.dstKey = dstKey;
+                this.srcRow = srcRow;
+                this.dstRow = dstRow;
+                this.srcRaw = srcRaw;
+                this.linked = linked;
+            }
+        }
+
+        private final MergeContext ctx;
+        private final List<String[]> problems = new ArrayList<>();
+
+        Verifier(MergeContext ctx) {
+            this.ctx = ctx;
+        }
+
+        void run(Path report, Workset... worksets) throws SQLException, IOException {
+            List<Target> targets = new ArrayList<>();
+            for (Workset ws : worksets) targets.addAll(targets(ws, ws.schema.equals(SCHEMA_LABBENCH)));
+            ExecutorService pool = Executors.newFixedThreadPool(VERIFY_THREADS);
+            try {
+                List<CompletableFuture<Void>> pending = new ArrayList<>();
+                for (Target g : targets) {
+                    for (KeyChunk[] chunk : g.chunks) {
+                        CompletableFuture<long[]> src = query(g.schema, pool, c -> checksum(c, g, g.srcRow, chunk[0]));
+                        CompletableFuture<long[]> dst = onDst(pool, c -> checksum(c, g, g.dstRow, chunk[1]));
+                        pending.add(src.thenCombine(dst, (a, b) -> {
+                            g.rows.add(a[0]);
+                            return Arrays.equals(a, b);
+                        }).thenAcceptAsync(same -> {
+                            if (same) return;
+                            try {
+                                drill(g, chunk);
+                            } catch (SQLException e) {
+                                throw new CompletionException(e);
+                            }
+                        }, pool));
+                    }
+                }
+                join(CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])));
+            } finally {
+                pool.shutdownNow();
+            }
+
+            System.out.println(String.format("  %-40s %10s %8s  %s", "table", "rows", "chunks", "result"));
+            for (Target g : targets) {
+                long bad = g.differing.sum();
+                System.out.println(String.format("  %-40s %10d %8d  %s", node(g.schema, g.table), g.rows.sum(),
+                        g.chunks.size(), bad == 0 ? "ok" : bad + " chunk(s) differ"));
+            }
+            try (BufferedWriter w = Files.newBufferedWriter(report, StandardCharsets.UTF_8)) {
+                w.write("source_schema,table,source_row,dest_row,problem\n");
+                for (String[] r : problems) {
+                    StringJoiner line = new StringJoiner(",");
+                    for (String f : r) line.add(csv(f));
+                    w.write(line + "\n");
+                }
+            }
+            if (!problems.isEmpty()) {
+                throw new IllegalStateException("Verification found " + problems.size() +
+                        " row(s) where DEST differs from the sources; report: " + report.toAbsolutePath());
+            }
+            System.out.println("Verified: DEST matches the sources; report: " + report.toAbsolutePath());
+        }
+
+        /** Every table copy of one schema's run: global tables, the plate-scoped tables and the links. */
+        private List<Target> targets(Workset ws, boolean reindex) throws SQLException {
+            List<Target> out = new ArrayList<>();
+            for (String table : GLOBAL_TABLES) {
+                TablePlan t = ctx.catalog.table(table);
+                Set<Long> ids = new LinkedHashSet<>();
+                try (Connection src = openSrc(ws.schema); Statement st = src.createStatement();
+                     ResultSet rs = st.executeQuery("SELECT `" + t.pk + "` FROM " + table)) {
+                    while (rs.next()) ids.add(rs.getLong(1));
+                }
+                out.add(rows(ws.schema, t, reindex, ids));
+            }
+            for (String table : SUBSET_TABLES) {
+                Set<Long> ids = ws.ids.get(table);
+                if (ids != null && !ids.isEmpty()) out.add(rows(ws.schema, ctx.catalog.table(table), reindex, ids));
+            }
+
+            IdRemap reactions = ctx.plan.forTable("cyclesequencing", reindex);
+            IdRemap assemblies = ctx.plan.forTable("assembly", reindex);
+            String srcLink = "CONCAT_WS('#', " + reactions.sql("`reaction`") + ", " + assemblies.sql("`assembly`") + ")";
+            String dstLink = "CONCAT_WS('#', `reaction`, `assembly`)";
+            Target links = new Target(ws.schema, "sequencing_result", "reaction", srcLink, dstLink, srcLink, dstLink,
+                    "`reaction`, `assembly`", ws.assemblyIds);
+            chunk(links, ws.reactionIds, reactions);
+            out.add(links);
+            return out;
+        }
+
+        /** A table with an id column: PK and references remapped on the source, LOBs hashed, renames folded. */
+        private Target rows(String schema, TablePlan t, boolean reindex, Set<Long> ids) {
+            IdRemap remap = ctx.plan.forTable(t.table, reindex);
+            StringJoiner src = new StringJoiner(", ");
+            StringJoiner dst = new StringJoiner(", ");
+            StringJoiner nulls = new StringJoiner(", ");
+            for (int i = 0; i < t.columns.length; i++) {
+                String col = "`" + t.columns[i] + "`";
+                String s = col;
+                String d = col;
+                if (i == t.pkIndex) {
+                    s = remap.sql(col);
+                } else if (t.refs[i] != null) {
+                    s = ctx.plan.forTable(t.refs[i], reindex).sql(col);
+                    // Implicit references <= 0 mean "none" and pass through unmapped (see RowMapper.ref)
+                    if (t.implicit[i] && !s.equals(col)) s = "CASE WHEN " + col + " <= 0 THEN " + col + " ELSE " + s + " END";
+                } else if (t.unique[i] && reindex) {
+                    s = d = "REGEXP_REPLACE(" + col + ", " + LB_SUFFIX + ", '')";
+                } else if (t.binary[i] || t.text[i]) {
+                    s = d = "MD5(" + col + ")";
+                }
+                src.add(s);
+                dst.add(d);
+                nulls.add("ISNULL(" + col + ")");
+            }
+            // CONCAT_WS skips NULLs, so the null pattern goes in as a column of its own
+            String pk = "`" + t.pk + "`";
+            Target g = new Target(schema, t.table, t.pk, remap.sql(pk), pk,
+                    "CONCAT_WS('#', " + src + ", CONCAT(" + nulls + "))",
+                    "CONCAT_WS('#', " + dst + ", CONCAT(" + nulls + "))", pk, null);
+            chunk(g, ids, remap);
+            return g;
+        }
+
+        /**
+         * Splits the source ids the run copied into chunks, each paired with the same ids on DEST. A chunk never
+         * straddles two remap segments, so its DEST ids are its source ids plus one offset.
+         */
+        private static void chunk(Target g, Set<Long> ids, IdRemap remap) {
+            long[] sorted = ids.stream().mapToLong(Long::longValue)
+                    .filter(id -> !INCREMENTAL || id <= remap.high) // later rows were not copied (see deltaPredicate)
+                    .sorted().distinct().toArray();
+            int i = 0;
+            while (i < sorted.length) {
+                long offset = remap.map(sorted[i]) - sorted[i];
+                int j = i + 1;
+                while (j < sorted.length && remap.map(sorted[j]) - sorted[j] == offset) j++;
+                List<Long> run = Arrays.stream(sorted, i, j).boxed().collect(Collectors.toList());
+                for (KeyChunk c : KeyChunk.split(run)) g.chunks.add(new KeyChunk[] { c, c.shift(offset) });
+                i = j;
+            }
+        }
+
+        /** Row count and XOR of the first 60 bits of each row's MD5, which fits a long: equal rows in any order match. */
+        private static long[] checksum(Connection c, Target g, String row, KeyChunk chunk) throws SQLException {
+            String sql = "SELECT COUNT(*), BIT_XOR(CAST(CONV(LEFT(MD5(" + row + "), 15), 16, 10) AS UNSIGNED))" +
+                         " FROM " + g.table + " WHERE " + chunk.predicate(g.keyColumn);
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                chunk.bind(ps, 1);
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    return new long[] { rs.getLong(1), rs.getLong(2) };
+                }
+            }
+        }
+
+        /** Compares a differing chunk row by row and records what differs. */
+        private void drill(Target g, KeyChunk[] chunk) throws SQLException {
+            Map<String, String[]> src;
+            Map<String, String[]> dst;
+            try (Connection c = openSrc(g.schema)) {
+                src = rowHashes(c, g.table, g.srcKey, g.srcRow, g.srcRaw, g.keyColumn, chunk[0]);
+            }
+            try (Connection c = openDst(SCHEMA_MERGE)) {
+                dst = rowHashes(c, g.table, g.dstKey, g.dstRow, null, g.keyColumn, chunk[1]);
+            }
+            List<String[]> found = new ArrayList<>();
+            for (Map.Entry<String, String[]> e : src.entrySet()) {
+                String[] s = e.getValue();
+                String[] d = dst.remove(e.getKey());
+                String raw = String.join("#", Arrays.copyOfRange(s, 1, s.length));
+                if (d == null) {
+                    // Links to an assembly outside the workset are orphans, reported by the links stage
+                    if (g.linked != null && !g.linked.contains(Long.parseLong(s[2]))) continue;
+                    found.add(new String[] { g.schema, g.table, raw, e.getKey(), "missing" });
+                } else if (!s[0].equals(d[0])) {
+                    found.add(new String[] { g.schema, g.table, raw, e.getKey(), "different" });
+                }
+            }
+            for (String key : dst.keySet()) found.add(new String[] { g.schema, g.table, "", key, "unexpected" });
+            if (found.isEmpty()) return;
+            g.differing.increment();
+            synchronized (this) {
+                problems.addAll(found);
+            }
+        }
+
+        /** key -> {row MD5, raw columns...} for the rows of one chunk. */
+        private static Map<String, String[]> rowHashes(Connection c, String table, String key, String row, String raw,
+                                                       String keyColumn, KeyChunk chunk) throws SQLException {
+            String sql = "SELECT " + key + ", MD5(" + row + ")" + (raw == null ? "" : ", " + raw) +
+                         " FROM " + table + " WHERE " + chunk.predicate(keyColumn);
+            Map<String, String[]> out = new HashMap<>();
+            try (PreparedStatement ps = prepareStreaming(c, sql)) {
+                chunk.bind(ps, 1);
+                try (ResultSet rs = ps.executeQuery()) {
+                    int cols = rs.getMetaData().getColumnCount();
+                    while (rs.next()) {
+                        String[] v = new String[cols - 1];
+                        for (int i = 2; i <= cols; i++) v[i - 2] = rs.getString(i);
+                        out.put(rs.getString(1), v);
+                    }
+                }
+            }
+            return out;
+        }
+
+        private static <T> CompletableFuture<T> onDst(ExecutorService pool, SourceQuery<T> q) {
+            return CompletableFuture.supplyAsync(() -> {
+                try (Connection dst = openDst(SCHEMA_MERGE)) {
+                    return q.run(dst);
+                } catch (SQLException e) {
+                    throw new CompletionException(e);
+                }
+            }, pool);
+        }
+    }
+
+    // ---------- Scheduler ----------
+    @FunctionalInterface
+    private interface TableJob {
+        void run(Connection dst) throws SQLException;
+    }
+
+    private static String node(String schema, String table) {
+        return schema + "." + table;
+    }
+
+    /** Nodes of the tables {@code t} references (declared or implicit), within the same source schema. */
+    private static List<String> parentNodes(String schema, TablePlan t) {
+        List<String> out = new ArrayList<>();
+        for (String ref : t.referencedTables()) out.add(node(schema, ref));
+        return out;
+    }
+
+    /**
+     * Runs table copies over the FK dependency graph. A node ("schema.table") becomes ready once
+     * every parent it names has finished; parents that were never scheduled are ignored.
+     * With one thread, nodes run on the caller's DEST connection in insertion order (one transaction).
+     * With more, each node gets its own DEST connection and commits when it finishes, so children
+     * running on other connections can see (and FK-check against) its rows.
+     */
+    private static final class MergeScheduler {
+        private final Map<String, TableJob> jobs = new LinkedHashMap<>();
+        private final Map<String, List<String>> parents = new LinkedHashMap<>();
+
+        void add(String node, Collection<String> dependsOn, TableJob job) {
+            jobs.put(node, job);
+            parents.put(node, new ArrayList<>(dependsOn));
+        }
+
+        void run(Connection dst, int threads) throws SQLException {
+            Map<String, Set<String>> pending = new LinkedHashMap<>();
+            for (Map.Entry<String, List<String>> e : parents.entrySet()) {
+                Set<String> deps = new HashSet<>(e.getValue());
+                deps.retainAll(jobs.keySet());
+                deps.remove(e.getKey());
+                pending.put(e.getKey(), deps);
+            }
+            if (threads <= 1) runSerial(dst, pending);
+            else runParallel(pending, threads);
+        }
+
+        private void runSerial(Connection dst, Map<String, Set<String>> pending) throws SQLException {
+            Set<String> done = new HashSet<>();
+            while (!pending.isEmpty()) {
+                String next = null;
+                for (Map.Entry<String, Set<String>> e : pending.entrySet()) {
+                    if (done.containsAll(e.getValue())) { next = e.getKey(); break; }
+                }
+                if (next == null) throw new IllegalStateException("FK cycle among " + pending.keySet());
+                System.out.println("  -> " + next);
+                jobs.get(next).run(dst);
+                pending.remove(next);
+                done.add(next);
+            }
+        }
+
+        private void runParallel(Map<String, Set<String>> pending, int threads) throws SQLException {
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            CompletionService<String> cs = new ExecutorCompletionService<>(pool);
+            Set<String> done = new HashSet<>();
+            int running = 0;
+            try {
+                while (!pending.isEmpty() || running > 0) {
+                    for (Iterator<Map.Entry<String, Set<String>>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+                        Map.Entry<String, Set<String>> e = it.next();
+                        if (!done.containsAll(e.getValue())) continue;
+                        String ready = e.getKey();
+                        it.remove();
+                        running++;
+                        cs.submit(() -> { runOnOwnConnection(ready); return ready; });
+                    }
+                    if (running == 0) throw new IllegalStateException("FK cycle among " + pending.keySet());
+                    String finished = cs.take().get();
+                    running--;
+                    done.add(finished);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while merging", e);
+            } catch (ExecutionException e) {
+                Throwable c = e.getCause();
+                if (c instanceof SQLException) throw (SQLException) c;
+                if (c instanceof RuntimeException) throw (RuntimeException) c;
+                throw new SQLException(c);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+
+        private void runOnOwnConnection(String node) throws SQLException {
+            System.out.println("  -> " + node + " [" + Thread.currentThread().getName() + "]");
+            try (Connection dst = openDst(SCHEMA_MERGE)) {
+                dst.setAutoCommit(false);
+                try {
+                    jobs.get(node).run(dst);
+                    dst.commit();
+                } catch (SQLException | RuntimeException e) {
+                    dst.rollback();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    // ---------- Utils ----------
+    /** Forward-only, read-only statement whose rows arrive in fetch-size chunks from a server cursor. */
+    private static PreparedStatement prepareStreaming(Connection src, String sql) throws SQLException {
+        PreparedStatement ps = src.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        if (STREAM_FETCH_SIZE > 0) ps.setFetchSize(STREAM_FETCH_SIZE);
+        return ps;
+    }
+
+    private static boolean isBinaryLob(int sqlType) {
+        return sqlType == Types.BLOB || sqlType == Types.LONGVARBINARY;
+    }
+
+    private static boolean isTextLob(int sqlType) {
+        return sqlType == Types.CLOB || sqlType == Types.NCLOB
+            || sqlType == Types.LONGVARCHAR || sqlType == Types.LONGNVARCHAR;
+    }
+
+    private static String placeholders(int n) {
+        if (n <= 0) return "";
+        return String.join(", ", Collections.nCopies(n, "?"));
+    }
+
+    private static void bind(PreparedStatement ps, List<?> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) ps.setObject(i + 1, params.get(i));
+    }
+
+    private static String csv(String v) {
+        if (v == null) return "";
+        if (v.indexOf(',') < 0 && v.indexOf('"') < 0 && v.indexOf('\n') < 0 && v.indexOf('\r') < 0) return v;
+        return "\"" + v.replace("\"", "\"\"") + "\"";
     }
 }
 
@@ -0,0 +1,115 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class BulkLoaderTest {
+
+    private static final MergeSubset.TablePlan PLAN = new MergeSubset.TablePlan("gel_quantification",
+            List.of("id", "volume", "date"), List.of("int", "decimal", "date"), "id",
+            Collections.emptyMap(), Collections.emptySet());
+
+    /** A forward-only result set over {@code rows}, serving the getters TsvRows uses. */
+    private static ResultSet resultSet(Object[]... rows) {
+        int[] at = { -1 };
+        boolean[] wasNull = { false };
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "next":
+                            return ++at[0] < rows.length;
+                        case "wasNull":
+                            return wasNull[0];
+                        case "getLong": {
+                            Object v = rows[at[0]][(Integer) args[0] - 1];
+                            wasNull[0] = v == null;
+                            return v == null ? 0L : ((Number) v).longValue();
+                        }
+                        case "getString": {
+                            Object v = rows[at[0]][(Integer) args[0] - 1];
+                            wasNull[0] = v == null;
+                            return v == null ? null : v.toString();
+                        }
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static MergeSubset.RowMapper mapper(long limsOffset) {
+        MergeSubset.IdRemap remap = new MergeSubset.IdRemap("lims", PLAN.table, Collections.emptyList(), 10,
+                limsOffset, null, null);
+        MergeSubset.OffsetPlan plan = new MergeSubset.OffsetPlan(Map.of(PLAN.table, remap), Map.of());
+        MergeSubset.MergeContext ctx = new MergeSubset.MergeContext(null, plan, new MergeSubset.UniqueIndex(),
+                new MergeSubset.Checkpoints(false, false), new MergeSubset.Metrics(), null);
+        return new MergeSubset.RowMapper(PLAN, false, ctx);
+    }
+
+    private static String tsv(MergeSubset.BulkLoader.TsvRows rows) throws SQLException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (rows.start()) rows.transferTo(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void outOfRangeValuesGoOutVerbatim() throws Exception {
+        // Neither fits the DEST columns; the server is left to reject them, which LOCAL loads only warn about
+        ResultSet rs = resultSet(new Object[] { 1L, "1e40", "2024-13-45" }, new Object[] { 2L, null, "2024-01-31" });
+        MergeSubset.BulkLoader.TsvRows rows = new MergeSubset.BulkLoader.TsvRows(rs, mapper(100), 10);
+        assertEquals("101\t1e40\t2024-13-45\n102\t\\N\t2024-01-31\n", tsv(rows));
+        assertEquals(2, rows.count);
+        assertTrue(rows.exhausted);
+    }
+
+    @Test
+    void rowsStopAtTheLimit() throws Exception {
+        ResultSet rs = resultSet(new Object[] { 1L, "1.5", "2024-01-01" }, new Object[] { 2L, "2.5", "2024-01-02" });
+        MergeSubset.RowMapper m = mapper(0);
+        MergeSubset.BulkLoader.TsvRows first = new MergeSubset.BulkLoader.TsvRows(rs, m, 1);
+        assertEquals("1\t1.5\t2024-01-01\n", tsv(first));
+        assertFalse(first.exhausted);
+        assertEquals("2\t2.5\t2024-01-02\n", tsv(new MergeSubset.BulkLoader.TsvRows(rs, m, 1)));
+    }
+
+    @Test
+    void cleanLoadPasses() throws SQLException {
+        MergeSubset.BulkLoader.check("gel_quantification", 2, 2, null);
+    }
+
+    @Test
+    void warningsFailTheLoadEvenWhenEveryRowWasKept() {
+        SQLWarning warnings = new SQLWarning("Out of range value for column 'volume' at row 1");
+        warnings.setNextWarning(new SQLWarning("Incorrect date value: '2024-13-45' for column 'date' at row 1"));
+        SQLException e = assertThrows(SQLException.class,
+                () -> MergeSubset.BulkLoader.check("gel_quantification", 2, 2, warnings));
+        assertTrue(e.getMessage().contains("kept 2 of 2 rows with 2 warning(s)"), e.getMessage());
+        assertTrue(e.getMessage().contains("Out of range value for column 'volume'"), e.getMessage());
+        assertTrue(e.getMessage().contains("Incorrect date value"), e.getMessage());
+    }
+
+    @Test
+    void onlyTheFirstFewWarningsAreQuoted() {
+        SQLWarning warnings = new SQLWarning("warning 1");
+        for (int i = 2; i <= 8; i++) warnings.setNextWarning(new SQLWarning("warning " + i));
+        SQLException e = assertThrows(SQLException.class,
+                () -> MergeSubset.BulkLoader.check("pcr", 8, 8, warnings));
+        assertTrue(e.getMessage().contains("8 warning(s): warning 1; "), e.getMessage());
+        assertTrue(e.getMessage().contains("warning 5; ..."), e.getMessage());
+        assertFalse(e.getMessage().contains("warning 6"), e.getMessage());
+    }
+
+    @Test
+    void skippedRowsFailTheLoad() {
+        SQLException e = assertThrows(SQLException.class, () -> MergeSubset.BulkLoader.check("pcr", 1, 2, null));
+        assertEquals("LOAD DATA into pcr kept 1 of 2 rows", e.getMessage());
+    }
+}
@@ -0,0 +1,76 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.Timestamp;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class IdRemapTest {
+
+    private static MergeSubset.IdRemap remap(List<MergeSubset.Segment> history, long srcMax, long offset) {
+        return new MergeSubset.IdRemap("labbench", "pcr", history, srcMax, offset, null, null);
+    }
+
+    @Test
+    void withoutHistoryEveryIdTakesTheOffset() {
+        MergeSubset.IdRemap r = remap(List.of(), 50, 1000);
+        assertEquals(0, r.watermark);
+        assertEquals(50, r.high);
+        assertEquals(1001, r.map(1));
+        assertEquals(1050, r.map(50));
+        assertFalse(r.merged(1));
+        assertEquals("(CAST(`id` AS SIGNED) + 1000)", r.sql("`id`"));
+    }
+
+    @Test
+    void identityLeavesTheColumnAlone() {
+        MergeSubset.IdRemap r = remap(List.of(), 50, 0);
+        assertEquals(7, r.map(7));
+        assertEquals("`id`", r.sql("`id`"));
+    }
+
+    @Test
+    void earlierRunsKeepTheirOffsets() {
+        List<MergeSubset.Segment> history = List.of(
+                new MergeSubset.Segment(10, 0, null),
+                new MergeSubset.Segment(25, 1000, null));
+        MergeSubset.IdRemap r = remap(history, 40, 5000);
+        assertEquals(25, r.watermark);
+        assertEquals(40, r.high);
+
+        // Segment highs are inclusive
+        assertEquals(1, r.map(1));
+        assertEquals(10, r.map(10));
+        assertEquals(1011, r.map(11));
+        assertEquals(1025, r.map(25));
+        assertEquals(5026, r.map(26));
+        assertEquals(5040, r.map(40));
+
+        assertTrue(r.merged(25));
+        assertFalse(r.merged(26));
+
+        String c = "CAST(`id` AS SIGNED)";
+        assertEquals("CASE WHEN " + c + " <= 10 THEN " + c + " + 0 WHEN " + c + " <= 25 THEN " + c + " + 1000 ELSE "
+                + c + " + 5000 END", r.sql("`id`"));
+    }
+
+    @Test
+    void highNeverDropsBelowTheWatermark() {
+        MergeSubset.IdRemap r = remap(List.of(new MergeSubset.Segment(25, 0, null)), 20, 100);
+        assertEquals(25, r.high);
+        assertEquals(25, r.map(25));
+    }
+
+    @Test
+    void changedRowsAreUpsertedSinceTheNewestChange() {
+        Timestamp older = Timestamp.valueOf("2024-01-01 00:00:00");
+        Timestamp newer = Timestamp.valueOf("2024-06-01 00:00:00");
+        List<MergeSubset.Segment> history = List.of(
+                new MergeSubset.Segment(10, 0, newer),
+                new MergeSubset.Segment(20, 0, older));
+        MergeSubset.IdRemap r = new MergeSubset.IdRemap("lims", "pcr", history, 30, 0, "date", null);
+        assertTrue(r.upserts());
+        assertEquals(newer, r.changedSince);
+
+        assertFalse(remap(history, 30, 0).upserts());
+    }
+}
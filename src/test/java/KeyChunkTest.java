@@ -0,0 +1,114 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.Test;
+
+/** {@link MergeSubset.KeyChunk} with the default KEY_CHUNK_SIZE of 1000. */
+class KeyChunkTest {
+
+    private static List<Long> keys(LongStream ids) {
+        List<Long> out = new ArrayList<>();
+        ids.forEach(out::add);
+        return out;
+    }
+
+    @Test
+    void noKeysNoChunks() {
+        assertTrue(MergeSubset.KeyChunk.split(null).isEmpty());
+        assertTrue(MergeSubset.KeyChunk.split(List.of()).isEmpty());
+    }
+
+    @Test
+    void denseRunBecomesBetween() {
+        List<MergeSubset.KeyChunk> chunks = MergeSubset.KeyChunk.split(keys(LongStream.rangeClosed(101, 116)));
+        assertEquals(1, chunks.size());
+        MergeSubset.KeyChunk c = chunks.get(0);
+        assertNull(c.ids);
+        assertEquals(101, c.lo);
+        assertEquals(116, c.hi);
+        assertEquals("`id` BETWEEN ? AND ?", c.predicate("id"));
+    }
+
+    @Test
+    void shortRunStaysInTheInList() {
+        List<MergeSubset.KeyChunk> chunks = MergeSubset.KeyChunk.split(keys(LongStream.rangeClosed(101, 115)));
+        assertEquals(1, chunks.size());
+        assertNotNull(chunks.get(0).ids);
+        assertEquals(16, chunks.get(0).ids.length);
+    }
+
+    @Test
+    void sparseKeysAreSortedDedupedAndPadded() {
+        List<MergeSubset.KeyChunk> chunks = MergeSubset.KeyChunk.split(Arrays.asList(9L, 3L, 5L, 3L));
+        assertEquals(1, chunks.size());
+        MergeSubset.KeyChunk c = chunks.get(0);
+        assertEquals(3, c.lo);
+        assertEquals(9, c.hi);
+        // At least 8 keys, the last one repeated
+        assertArrayEquals(new long[] { 3, 5, 9, 9, 9, 9, 9, 9 }, c.ids);
+        assertEquals("`id` IN (?, ?, ?, ?, ?, ?, ?, ?)", c.predicate("id"));
+    }
+
+    @Test
+    void inListsPadToPowersOfTwo() {
+        long[] nine = MergeSubset.KeyChunk.split(keys(LongStream.rangeClosed(1, 9).map(i -> i * 10))).get(0).ids;
+        assertEquals(16, nine.length);
+        assertEquals(90, nine[8]);
+        assertEquals(90, nine[15]);
+
+        long[] sixteen = MergeSubset.KeyChunk.split(keys(LongStream.rangeClosed(1, 16).map(i -> i * 10))).get(0).ids;
+        assertEquals(16, sixteen.length);
+        assertEquals(160, sixteen[15]);
+    }
+
+    @Test
+    void mixedKeysKeepTheirOrder() {
+        List<Long> ids = new ArrayList<>(List.of(1L, 3L, 200L));
+        ids.addAll(keys(LongStream.range(100, 150)));
+        List<MergeSubset.KeyChunk> chunks = MergeSubset.KeyChunk.split(ids);
+        assertEquals(3, chunks.size());
+        assertArrayEquals(new long[] { 1, 3, 3, 3, 3, 3, 3, 3 }, chunks.get(0).ids);
+        assertNull(chunks.get(1).ids);
+        assertEquals(100, chunks.get(1).lo);
+        assertEquals(149, chunks.get(1).hi);
+        assertEquals(200, chunks.get(2).lo);
+        assertEquals(200, chunks.get(2).ids[7]);
+    }
+
+    @Test
+    void longRunsAndListsSplitAtTheChunkSize() {
+        List<MergeSubset.KeyChunk> ranges = MergeSubset.KeyChunk.split(keys(LongStream.rangeClosed(1, 2500)));
+        assertEquals(3, ranges.size());
+        assertEquals(1, ranges.get(0).lo);
+        assertEquals(1000, ranges.get(0).hi);
+        assertEquals(1001, ranges.get(1).lo);
+        assertEquals(2000, ranges.get(1).hi);
+        assertEquals(2001, ranges.get(2).lo);
+        assertEquals(2500, ranges.get(2).hi);
+
+        List<MergeSubset.KeyChunk> lists = MergeSubset.KeyChunk.split(keys(LongStream.rangeClosed(1, 1500).map(i -> i * 2)));
+        assertEquals(2, lists.size());
+        // A full chunk is not padded past the chunk size
+        assertEquals(1000, lists.get(0).ids.length);
+        assertEquals(2000, lists.get(0).hi);
+        assertEquals(512, lists.get(1).ids.length);
+        assertEquals(2002, lists.get(1).lo);
+        assertEquals(3000, lists.get(1).ids[511]);
+    }
+
+    @Test
+    void shiftMovesEveryKey() {
+        MergeSubset.KeyChunk range = MergeSubset.KeyChunk.split(keys(LongStream.rangeClosed(1, 20))).get(0).shift(100);
+        assertNull(range.ids);
+        assertEquals(101, range.lo);
+        assertEquals(120, range.hi);
+
+        MergeSubset.KeyChunk list = MergeSubset.KeyChunk.split(List.of(4L, 8L)).get(0).shift(100);
+        assertEquals(104, list.lo);
+        assertEquals(108, list.hi);
+        assertArrayEquals(new long[] { 104, 108, 108, 108, 108, 108, 108, 108 }, list.ids);
+    }
+}
@@ -0,0 +1,43 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Locale;
+import org.junit.jupiter.api.Test;
+
+/** {@link MergeSubset.UniqueIndex#key}: values compare as MySQL's accent- and case-insensitive collations do. */
+class UniqueIndexTest {
+
+    @Test
+    void caseIsFolded() {
+        assertEquals("extraction_12", MergeSubset.UniqueIndex.key("EXTRACTION_12"));
+        assertEquals(MergeSubset.UniqueIndex.key("Workflow A"), MergeSubset.UniqueIndex.key("workflow a"));
+    }
+
+    @Test
+    void accentsAreDropped() {
+        assertEquals("cafe", MergeSubset.UniqueIndex.key("Café"));
+        assertEquals("angstrom", MergeSubset.UniqueIndex.key("Ångström"));
+    }
+
+    @Test
+    void composedAndDecomposedFormsMatch() {
+        assertEquals(MergeSubset.UniqueIndex.key("\u00e9"), MergeSubset.UniqueIndex.key("e\u0301"));
+    }
+
+    @Test
+    void caseFoldingIgnoresTheDefaultLocale() {
+        // Locale.ROOT, so a Turkish default locale does not turn I into a dotless i
+        Locale saved = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            assertEquals("title", MergeSubset.UniqueIndex.key("TITLE"));
+        } finally {
+            Locale.setDefault(saved);
+        }
+    }
+
+    @Test
+    void differentValuesStayDifferent() {
+        assertNotEquals(MergeSubset.UniqueIndex.key("abc"), MergeSubset.UniqueIndex.key("abd"));
+        assertNotEquals(MergeSubset.UniqueIndex.key("abc"), MergeSubset.UniqueIndex.key("abc_lb"));
+    }
+}